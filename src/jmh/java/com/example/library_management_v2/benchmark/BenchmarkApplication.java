@@ -0,0 +1,57 @@
+package com.example.library_management_v2.benchmark;
+
+import com.example.library_management_v2.LibraryManagementV2Application;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Startar hela applikationen mot en KOPIA av libraryWithRole.db
+// Så kan benchmarks köra riktiga SQL-frågor utan att ändra i vår databas
+
+public final class BenchmarkApplication {
+
+    private BenchmarkApplication() {
+    }
+
+
+    // extraArgs = vanliga Spring-argument, t.ex. "--library.security.jwt.trust-claims=true"
+    public static ConfigurableApplicationContext start(String... extraArgs) {
+        Path database = copyDatabase();
+
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:sqlite:" + database.toAbsolutePath(),
+                "--spring.jpa.show-sql=false",
+                "--logging.level.root=WARN",
+                "--logging.level.com.example=WARN",
+                "--logging.level.SECURITY=WARN",
+                "--logging.level.AUDIT=WARN"
+        ));
+        args.addAll(Arrays.asList(extraArgs));
+
+        return new SpringApplicationBuilder(LibraryManagementV2Application.class)
+                .run(args.toArray(new String[0]));
+    }
+
+
+    private static Path copyDatabase() {
+        try {
+            Path source = Paths.get(System.getProperty("benchmark.db", "libraryWithRole.db"));
+            Path copy = Files.createTempFile("library-benchmark-", ".db");
+            Files.copy(source, copy, StandardCopyOption.REPLACE_EXISTING);
+            copy.toFile().deleteOnExit();
+            return copy;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Kunde inte kopiera databasen för benchmark", e);
+        }
+    }
+}
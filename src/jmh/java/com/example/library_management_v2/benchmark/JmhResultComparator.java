@@ -0,0 +1,108 @@
+package com.example.library_management_v2.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Jämför två JMH-resultatfiler (-rf json), t.ex. förra releasen mot nuvarande bygge
+// Skriver ut förändringen per benchmark och avslutar med kod 1 om något blivit
+// sämre än tillåten gräns - så kan den användas direkt som kontroll i CI
+//
+// Kör: mvn -Pbenchmark test-compile exec:exec@jmh-compare -Djmh.baseline=<gammal fil>
+
+public final class JmhResultComparator {
+
+    private JmhResultComparator() {
+    }
+
+
+    // args: <baseline.json> <current.json> [tillåten försämring i procent, standard 10]
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Användning: JmhResultComparator <baseline.json> <current.json> [max-regression-%]");
+            System.exit(2);
+        }
+
+        Map<String, Result> baseline = read(new File(args[0]));
+        Map<String, Result> current = read(new File(args[1]));
+        double allowedPercent = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+
+        int regressions = 0;
+        for (Map.Entry<String, Result> entry : current.entrySet()) {
+            Result before = baseline.get(entry.getKey());
+            Result after = entry.getValue();
+
+            if (before == null) {
+                System.out.printf("NY        %-80s %12.3f %s%n", entry.getKey(), after.score, after.unit);
+                continue;
+            }
+
+            double change = after.worseningPercent(before);
+            boolean regression = change > allowedPercent;
+            if (regression) {
+                regressions++;
+            }
+            System.out.printf("%-9s %-80s %12.3f -> %12.3f %s (%+.1f%%)%n",
+                    regression ? "SÄMRE" : "OK", entry.getKey(), before.score, after.score, after.unit, change);
+        }
+
+        for (String name : baseline.keySet()) {
+            if (!current.containsKey(name)) {
+                System.out.printf("BORTTAGEN %s%n", name);
+            }
+        }
+
+        if (regressions > 0) {
+            System.out.printf("%d benchmark(s) försämrades mer än %.1f%%%n", regressions, allowedPercent);
+            System.exit(1);
+        }
+    }
+
+
+    // Nyckel = benchmark-namn + parametrar, t.ex. "...RepositoryBenchmark.findAllBooks {catalogueSize=100}"
+    private static Map<String, Result> read(File file) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<>();
+
+        for (JsonNode run : new ObjectMapper().readTree(file)) {
+            StringBuilder name = new StringBuilder(run.path("benchmark").asText());
+            JsonNode params = run.path("params");
+            if (!params.isMissingNode()) {
+                name.append(" {");
+                Iterator<Map.Entry<String, JsonNode>> fields = params.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> param = fields.next();
+                    name.append(param.getKey()).append('=').append(param.getValue().asText());
+                    if (fields.hasNext()) {
+                        name.append(", ");
+                    }
+                }
+                name.append('}');
+            }
+
+            JsonNode metric = run.path("primaryMetric");
+            results.put(name.toString(), new Result(
+                    metric.path("score").asDouble(),
+                    metric.path("scoreUnit").asText(),
+                    run.path("mode").asText()));
+        }
+        return results;
+    }
+
+
+    private record Result(double score, String unit, String mode) {
+
+        // Positivt värde = sämre. För throughput (ops/tid) är högre bättre, annars är lägre bättre
+        double worseningPercent(Result baseline) {
+            if (baseline.score == 0) {
+                return 0;
+            }
+            double change = (score - baseline.score) / baseline.score * 100;
+            return mode.equals("thrpt") ? -change : change;
+        }
+    }
+}
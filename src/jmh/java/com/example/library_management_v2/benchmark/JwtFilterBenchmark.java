@@ -0,0 +1,72 @@
+package com.example.library_management_v2.benchmark;
+
+import com.example.library_management_v2.config.JwtAuthenticationFilter;
+import com.example.library_management_v2.config.JwtUtil;
+import com.example.library_management_v2.service.UserDetailsServiceImpl;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jämför JwtAuthenticationFilter i tre lägen:
+ * - database: UserDetails hämtas från databasen på varje request (gamla beteendet)
+ * - cache:    UserDetails hämtas från UserDetailsCache
+ * - claims:   användaren byggs direkt från token (library.security.jwt.trust-claims=true)
+ *
+ * Kör: mvn -Pbenchmark test-compile exec:exec -Djmh.include=JwtFilterBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtFilterBenchmark {
+
+    @Param({"database", "cache", "claims"})
+    public String mode;
+
+    private ConfigurableApplicationContext context;
+    private JwtAuthenticationFilter filter;
+    private String authorizationHeader;
+
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = BenchmarkApplication.start(
+                "--library.security.user-cache.enabled=" + !mode.equals("database"),
+                "--library.security.jwt.trust-claims=" + mode.equals("claims"));
+
+        filter = context.getBean(JwtAuthenticationFilter.class);
+
+        UserDetailsServiceImpl userDetailsService = context.getBean(UserDetailsServiceImpl.class);
+        String token = context.getBean(JwtUtil.class)
+                .generateToken(userDetailsService.loadUserByUsername("admin@test.com"));
+        authorizationHeader = "Bearer " + token;
+    }
+
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+
+    @Benchmark
+    public Object authenticateRequest() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/books");
+        request.addHeader("Authorization", authorizationHeader);
+
+        try {
+            filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+            return SecurityContextHolder.getContext().getAuthentication();
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.library_management_v2.benchmark;
+
+import com.example.library_management_v2.config.JwtUtil;
+import io.jsonwebtoken.Claims;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kostnaden för att validera en JWT per request.
+ *
+ * - threeParseValidation: det gamla flödet i JwtAuthenticationFilter
+ *   (extractUsername + validateToken = tre parsningar och tre HMAC-kontroller)
+ * - singlePassValidation: validateAndExtractClaims + validateToken(claims, ...) = en parsning
+ *
+ * Kör: mvn -Pbenchmark test-compile exec:exec -Djmh.include=JwtUtilBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtUtilBenchmark {
+
+    private JwtUtil jwtUtil;
+    private UserDetails userDetails;
+    private String token;
+
+
+    @Setup(Level.Trial)
+    public void createToken() {
+        jwtUtil = new JwtUtil();
+        userDetails = User.withUsername("user@test.com")
+                .password("")
+                .authorities("ROLE_USER")
+                .build();
+        token = jwtUtil.generateToken(userDetails);
+    }
+
+
+    @Benchmark
+    public boolean threeParseValidation() {
+        String username = jwtUtil.extractUsername(token);
+        return username != null && jwtUtil.validateToken(token, userDetails);
+    }
+
+
+    @Benchmark
+    public boolean singlePassValidation() {
+        Claims claims = jwtUtil.validateAndExtractClaims(token);
+        return claims.getSubject() != null && jwtUtil.validateToken(claims, userDetails);
+    }
+
+
+    @Benchmark
+    public String generateToken() {
+        return jwtUtil.generateToken(userDetails);
+    }
+}
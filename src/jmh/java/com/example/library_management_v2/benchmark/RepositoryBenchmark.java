@@ -0,0 +1,124 @@
+package com.example.library_management_v2.benchmark;
+
+import com.example.library_management_v2.dto.BookWithDetailsDTO;
+import com.example.library_management_v2.entity.Book;
+import com.example.library_management_v2.entity.Loan;
+import com.example.library_management_v2.entity.User;
+import com.example.library_management_v2.repository.BookRepository;
+import com.example.library_management_v2.repository.LoanRepository;
+import com.example.library_management_v2.repository.OffsetPageRequest;
+import com.example.library_management_v2.repository.UserRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mäter repository-frågorna mot en SQLite-kopia som fylls på med catalogueSize böcker
+ * (och ett lån per tionde bok för admin-användaren) innan mätningen.
+ *
+ * Kör: mvn -Pbenchmark test-compile exec:exec -Djmh.include=RepositoryBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryBenchmark {
+
+    private static final String USER_EMAIL = "admin@test.com";
+
+    @Param({"100", "10000"})
+    public int catalogueSize;
+
+    private ConfigurableApplicationContext context;
+    private BookRepository bookRepository;
+    private LoanRepository loanRepository;
+    private UserRepository userRepository;
+    private Long userId;
+
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = BenchmarkApplication.start();
+
+        bookRepository = context.getBean(BookRepository.class);
+        loanRepository = context.getBean(LoanRepository.class);
+        userRepository = context.getBean(UserRepository.class);
+        userId = userRepository.findByEmail(USER_EMAIL).map(User::getId).orElseThrow();
+
+        seedCatalogue(context.getBean(JdbcTemplate.class));
+    }
+
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+
+    // Fyll på med böcker (och lån) via JDBC i batchar - mycket snabbare än via JPA
+    private void seedCatalogue(JdbcTemplate jdbc) {
+        Long authorId = jdbc.queryForObject("SELECT MIN(author_id) FROM authors", Long.class);
+        long existing = bookRepository.count();
+
+        List<Object[]> books = new ArrayList<>();
+        for (long i = existing; i < catalogueSize; i++) {
+            books.add(new Object[]{"Benchmark Book " + i, 1900 + (int) (i % 120), 3, 3, authorId});
+        }
+        jdbc.batchUpdate("INSERT INTO books (title, publication_year, available_copies, total_copies, author_id) "
+                + "VALUES (?, ?, ?, ?, ?)", books);
+
+        // Datum i samma textformat som befintliga rader i libraryWithRole.db
+        List<Object[]> loans = new ArrayList<>();
+        String borrowed = LocalDate.now() + " 00:00:00";
+        String due = LocalDate.now().plusDays(14) + " 00:00:00";
+        for (Long bookId : jdbc.queryForList("SELECT book_id FROM books WHERE book_id % 10 = 0", Long.class)) {
+            loans.add(new Object[]{userId, bookId, borrowed, due});
+        }
+        jdbc.batchUpdate("INSERT INTO loans (user_id, book_id, borrowed_date, due_date) VALUES (?, ?, ?, ?)", loans);
+    }
+
+
+    @Benchmark
+    public List<Book> findAllBooks() {
+        return bookRepository.findAll();
+    }
+
+
+    // Samma fråga som GET /books/search kör när sökindexen är avstängda (en sida med 50 böcker)
+    @Benchmark
+    public List<BookWithDetailsDTO> searchBooksByTitle() {
+        return bookRepository.searchBookDetails("book 42", "book 42", null, null, new OffsetPageRequest(0, 50));
+    }
+
+
+    @Benchmark
+    public List<BookWithDetailsDTO> searchBooksByAuthorLastName() {
+        return bookRepository.searchBookDetails(null, null, "lind", "lind", new OffsetPageRequest(0, 50));
+    }
+
+
+    @Benchmark
+    public List<Loan> findLoansByUser() {
+        return loanRepository.findByUserId(userId);
+    }
+
+
+    @Benchmark
+    public List<Loan> findActiveLoansByUser() {
+        return loanRepository.findByUserIdAndReturnedDateIsNull(userId);
+    }
+
+
+    @Benchmark
+    public Optional<User> findUserByEmail() {
+        return userRepository.findByEmail(USER_EMAIL);
+    }
+}
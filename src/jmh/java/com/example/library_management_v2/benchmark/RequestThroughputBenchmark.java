@@ -0,0 +1,117 @@
+package com.example.library_management_v2.benchmark;
+
+import com.example.library_management_v2.config.JwtUtil;
+import com.example.library_management_v2.entity.User;
+import com.example.library_management_v2.repository.UserRepository;
+import com.example.library_management_v2.service.UserDetailsServiceImpl;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Lasttest över HTTP: Tomcat med vanliga plattformstrådar mot virtuella trådar
+ * (spring.threads.virtual.enabled). 400 klienttrådar, dubbelt så många som Tomcats standardpool.
+ *
+ * - userLoans:       GET /{userId}/loans - läsning via läs-poolen
+ * - borrowAndReturn: POST /loans + PUT /loans/{id}/return - skrivningar via SQLiteWriter
+ *
+ * Kör: mvn -Pbenchmark test-compile exec:exec -Djmh.include=RequestThroughputBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(400)
+public class RequestThroughputBenchmark {
+
+    private static final String USER_EMAIL = "admin@test.com";
+    private static final Pattern LOAN_ID = Pattern.compile("\"id\"\\s*:\\s*(\\d+)");
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private String baseUrl;
+    private String authorizationHeader;
+    private Long userId;
+    private List<Long> borrowerIds;
+    private List<Long> bookIds;
+
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = BenchmarkApplication.start("--spring.threads.virtual.enabled=" + threads.equals("virtual"));
+        baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+
+        UserDetailsServiceImpl userDetailsService = context.getBean(UserDetailsServiceImpl.class);
+        authorizationHeader = "Bearer " + context.getBean(JwtUtil.class)
+                .generateToken(userDetailsService.loadUserByUsername(USER_EMAIL));
+        userId = context.getBean(UserRepository.class).findByEmail(USER_EMAIL).map(User::getId).orElseThrow();
+
+        // Tillräckligt med exemplar för att lånen aldrig ska ta slut under mätningen
+        JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+        jdbc.update("UPDATE books SET available_copies = 1000000, total_copies = 1000000");
+        bookIds = jdbc.queryForList("SELECT book_id FROM books", Long.class);
+        borrowerIds = jdbc.queryForList("SELECT user_id FROM users WHERE user_id <> ?", Long.class, userId);
+
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+
+    @Benchmark
+    public String userLoans() throws IOException, InterruptedException {
+        return send(request("/" + userId + "/loans").GET(), 200);
+    }
+
+
+    @Benchmark
+    public String borrowAndReturn() throws IOException, InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String body = "{\"userId\":" + borrowerIds.get(random.nextInt(borrowerIds.size()))
+                + ",\"bookId\":" + bookIds.get(random.nextInt(bookIds.size())) + "}";
+
+        String loan = send(request("/loans")
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body)), 201);
+
+        Matcher id = LOAN_ID.matcher(loan);
+        if (!id.find()) {
+            throw new IllegalStateException("Inget lån-id i svaret: " + loan);
+        }
+        return send(request("/loans/" + id.group(1) + "/return").PUT(HttpRequest.BodyPublishers.noBody()), 200);
+    }
+
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).header("Authorization", authorizationHeader);
+    }
+
+
+    private String send(HttpRequest.Builder request, int expectedStatus) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != expectedStatus) {
+            throw new IllegalStateException("HTTP " + response.statusCode() + ": " + response.body());
+        }
+        return response.body();
+    }
+}
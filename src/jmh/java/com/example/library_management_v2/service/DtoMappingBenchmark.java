@@ -0,0 +1,76 @@
+package com.example.library_management_v2.service;
+
+import com.example.library_management_v2.dto.BookWithDetailsDTO;
+import com.example.library_management_v2.dto.LoanDTO;
+import com.example.library_management_v2.entity.Author;
+import com.example.library_management_v2.entity.Book;
+import com.example.library_management_v2.entity.Loan;
+import com.example.library_management_v2.entity.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mäter konverteringen entity -> DTO i BookService och LoanService.
+ * Ligger i service-paketet eftersom konverteringsmetoderna är package-private.
+ *
+ * Kör: mvn -Pbenchmark test-compile exec:exec -Djmh.include=DtoMappingBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DtoMappingBenchmark {
+
+    private BookService bookService;
+    private LoanService loanService;
+    private Book book;
+    private Loan loan;
+
+
+    @Setup(Level.Trial)
+    public void createEntities() {
+        bookService = new BookService();
+        loanService = new LoanService();
+
+        Author author = new Author();
+        author.setId(1L);
+        author.setFirstName("Astrid");
+        author.setLastName("Lindgren");
+        author.setBirthYear(1907);
+
+        book = new Book();
+        book.setId(1L);
+        book.setTitle("Pippi Longstocking");
+        book.setPublicationYear(1945);
+        book.setAvailableCopies(2);
+        book.setTotalCopies(3);
+        book.setAuthor(author);
+
+        User user = new User();
+        user.setId(1L);
+        user.setEmail("user@test.com");
+
+        loan = new Loan();
+        loan.setId(1L);
+        loan.setUser(user);
+        loan.setBook(book);
+        loan.setBorrowedDate(LocalDate.now().minusDays(20));
+        loan.setDueDate(LocalDate.now().minusDays(6));
+    }
+
+
+    @Benchmark
+    public BookWithDetailsDTO bookWithDetails() {
+        return bookService.convertToBookWithDetailsDTO(book);
+    }
+
+
+    @Benchmark
+    public LoanDTO loan() {
+        return loanService.convertToDTO(loan);
+    }
+}
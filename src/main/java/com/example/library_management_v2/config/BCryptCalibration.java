@@ -0,0 +1,63 @@
+package com.example.library_management_v2.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+
+/**
+ * Självtest vid uppstart: väljer BCrypt-styrka efter den här maskinens hastighet
+ *
+ * Varje steg i styrka dubblar tiden för en hash. Vi mäter en verifiering (som vid inloggning)
+ * från minStrength och uppåt, och väljer den högsta styrkan som fortfarande klarar
+ * targetMillis. Aldrig under minStrength, även om maskinen är långsam.
+ *
+ * Används när library.security.password-hashing.bcrypt-strength=auto (se PasswordConfig).
+ */
+final class BCryptCalibration {
+
+    private static final Logger logger = LoggerFactory.getLogger(BCryptCalibration.class);
+
+    private static final int MAX_STRENGTH = 31;    // BCrypts övre gräns
+    private static final int SAMPLES = 3;
+    private static final String PASSWORD = "kalibrering-av-bcrypt";
+
+    private BCryptCalibration() {
+    }
+
+
+    static int chooseStrength(long targetMillis, int minStrength) {
+        // Uppvärmning så att JIT-kompileringen inte räknas in i mätningen
+        for (int i = 0; i < 10; i++) {
+            measureMillis(4);
+        }
+
+        int chosen = minStrength;
+        for (int strength = minStrength; strength <= MAX_STRENGTH; strength++) {
+            double millis = measureMillis(strength);
+            logger.debug("BCrypt styrka {}: {} ms per verifiering", strength, String.format("%.1f", millis));
+            if (millis > targetMillis) {
+                if (strength == minStrength) {
+                    logger.warn("BCrypt styrka {} tar {} ms, över målet {} ms - använder lägsta tillåtna styrka",
+                            strength, Math.round(millis), targetMillis);
+                }
+                break;
+            }
+            chosen = strength;
+        }
+        return chosen;
+    }
+
+
+    // Snabbaste av några verifieringar - påverkas minst av annat som körs under uppstarten
+    static double measureMillis(int strength) {
+        String hash = BCrypt.hashpw(PASSWORD, BCrypt.gensalt(strength));
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < SAMPLES; i++) {
+            long start = System.nanoTime();
+            BCrypt.checkpw(PASSWORD, hash);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1_000_000.0;
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.library_management_v2.config;
+
+import com.example.library_management_v2.exception.PasswordHashingBusyException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * PasswordEncoder som kör BCrypt på en egen, begränsad trådpool
+ *
+ * BCrypt är medvetet långsamt (~100 ms CPU per hash). Körs det direkt på request-tråden kan en
+ * inloggningsstorm ta alla kärnor, och då står även /books och övriga läsningar stilla.
+ * Här körs encode/matches istället på högst library.security.password-hashing.threads trådar,
+ * med högst queue-capacity väntande. Är kön full avvisas anropet direkt med
+ * PasswordHashingBusyException (429 + Retry-After) istället för att vänta.
+ *
+ * Gäller alla BCrypt-anrop: inloggning (DaoAuthenticationProvider), registrering och nya användare.
+ *
+ * Metrics: library.security.password.hash (tag operation), library.security.password.queue.size,
+ * library.security.password.rejected
+ */
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+    private final PasswordEncoder delegate;
+    private final ThreadPoolExecutor executor;
+    private final long retryAfterSeconds;
+
+    private Timer encodeTime;
+    private Timer matchesTime;
+    private Counter rejected;
+
+
+    public BoundedPasswordEncoder(PasswordEncoder delegate, int threads, int queueCapacity, long retryAfterSeconds) {
+        this.delegate = delegate;
+        this.retryAfterSeconds = retryAfterSeconds;
+
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hash-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+
+    public void registerMetrics(MeterRegistry registry) {
+        encodeTime = Timer.builder("library.security.password.hash")
+                .description("Tid för en lösenordshash (utan kötid)")
+                .tag("operation", "encode")
+                .register(registry);
+        matchesTime = Timer.builder("library.security.password.hash")
+                .description("Tid för en lösenordshash (utan kötid)")
+                .tag("operation", "matches")
+                .register(registry);
+        rejected = Counter.builder("library.security.password.rejected")
+                .description("Avvisade hashningar (full kö, 429)")
+                .register(registry);
+        Gauge.builder("library.security.password.queue.size", executor.getQueue(), BlockingQueue::size)
+                .description("Hashningar som väntar på en tråd")
+                .register(registry);
+    }
+
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return run(encodeTime, () -> delegate.encode(rawPassword));
+    }
+
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return run(matchesTime, () -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+
+    // Läser bara hashens parametrar - ingen hashning, körs direkt
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+
+    // Anropas när Spring stänger ner (inferred destroy method)
+    public void close() {
+        executor.shutdown();
+    }
+
+
+    private <T> T run(Timer timer, Callable<T> hash) {
+        Future<T> result;
+        try {
+            result = executor.submit(() -> timer != null ? timer.recordCallable(hash) : hash.call());
+        } catch (RejectedExecutionException e) {
+            if (rejected != null) {
+                rejected.increment();
+            }
+            throw new PasswordHashingBusyException(
+                    "För många inloggningar just nu, försök igen om " + retryAfterSeconds + " s", retryAfterSeconds);
+        }
+
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Avbruten i väntan på lösenordshashning", e);
+        }
+    }
+}
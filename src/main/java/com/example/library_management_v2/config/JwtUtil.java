@@ -36,6 +36,15 @@ public class JwtUtil {
     // Kort livslängd eftersom vi nu har refresh tokens för förnyelse
     private final long JWT_EXPIRATION = 1000 * 60 * 15; // 15 minuter
 
+    // Utfärdandetid i millisekunder (iat har bara hela sekunder) - för UserRevocationList
+    public static final String ISSUED_AT_MILLIS = "iat_ms";
+
+    // Parsern byggs EN gång och återanvänds (den är trådsäker)
+    // Tidigare byggdes en ny parser för varje anrop till extractAllClaims
+    private final JwtParser jwtParser = Jwts.parser()
+            .verifyWith(SECRET_KEY)
+            .build();
+
 
     public String extractUsername(String token) {
         // Subject (sub) i JWT innehåller normalt användarnamnet
@@ -64,9 +73,7 @@ public class JwtUtil {
     private Claims extractAllClaims(String token) {
         try {
             // Parsa token med vår hemliga nyckel
-            return Jwts.parser()
-                    .verifyWith(SECRET_KEY)
-                    .build()
+            return jwtParser
                     .parseSignedClaims(token)
                     .getPayload();
         } catch (JwtException e) {
@@ -76,6 +83,28 @@ public class JwtUtil {
     }
 
 
+    /**
+     * Parsar och verifierar token i ETT steg och returnerar alla claims.
+     *
+     * Signaturen kontrolleras bara en gång här. Använd sedan de returnerade claims
+     * (getSubject, getExpiration, "role" osv.) istället för extractUsername/extractRole,
+     * som var och en parsar och verifierar token på nytt.
+     *
+     * Kastar RuntimeException om token är ogiltig eller har gått ut.
+     */
+    public Claims validateAndExtractClaims(String token) {
+        // jjwt kontrollerar även exp vid parsing och kastar ExpiredJwtException
+        return extractAllClaims(token);
+    }
+
+
+    // Utfärdandetid i millisekunder, null om token saknar claimen
+    public Long extractIssuedAtMillis(Claims claims) {
+        Number issuedAt = claims.get(ISSUED_AT_MILLIS, Number.class);
+        return issuedAt != null ? issuedAt.longValue() : null;
+    }
+
+
     public Boolean isTokenExpired(String token) {
         return extractExpiration(token).before(new Date());
     }
@@ -98,6 +127,7 @@ public class JwtUtil {
     private String createToken(Map<String, Object> claims, String subject) {
         Date now = new Date();
         Date expirationDate = new Date(now.getTime() + JWT_EXPIRATION);
+        claims.put(ISSUED_AT_MILLIS, now.getTime());
 
         return Jwts.builder()
                 .setClaims(claims)                    // Extra information (t.ex. roller)
@@ -124,6 +154,18 @@ public class JwtUtil {
     }
 
 
+    // Samma kontroll som validateToken ovan, men på redan verifierade claims (ingen ny parsing)
+    public Boolean validateToken(Claims claims, UserDetails userDetails) {
+        String username = claims.getSubject();
+        Date expiration = claims.getExpiration();
+
+        return username != null
+                && username.equals(userDetails.getUsername())
+                && expiration != null
+                && expiration.after(new Date());
+    }
+
+
     public Boolean isValidTokenFormat(String token) {
         if (token == null || token.trim().isEmpty()) {
             return false;
@@ -1,16 +1,97 @@
 package com.example.library_management_v2.config;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
+import java.util.Map;
+
+/**
+ * Lösenordshashning
+ *
+ * Nya hashar sparas med id-prefix ({bcrypt}$2a$12$...) via DelegatingPasswordEncoder, så att
+ * algoritm och styrka kan bytas utan att alla måste byta lösenord. Äldre hashar utan prefix
+ * verifieras fortfarande som BCrypt.
+ *
+ * Styrkan (library.security.password-hashing.bcrypt-strength) är antingen ett tal 4-31, eller
+ * "auto": då mäter BCryptCalibration vid uppstart vilken styrka som ger en verifiering på
+ * ungefär target-verify-ms på den här maskinen (aldrig under min-strength).
+ *
+ * Hashar med annat format eller lägre styrka uppgraderas vid nästa lyckade inloggning
+ * (PasswordUpgradingAuthenticationProvider -> UserDetailsServiceImpl.updatePassword), om hashningen
+ * inte är full just då.
+ */
 @Configuration
 public class PasswordConfig {
 
+    private static final Logger logger = LoggerFactory.getLogger(PasswordConfig.class);
+
+    @Autowired
+    private Environment env;
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+
+    // BCrypt på en egen begränsad trådpool (se BoundedPasswordEncoder)
+    // library.security.password-hashing.enabled=false = BCrypt direkt på anroparens tråd som tidigare
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        int strength = bcryptStrength();
+        meterRegistry.ifAvailable(registry -> Gauge.builder("library.security.password.bcrypt.strength", () -> strength)
+                .description("BCrypt-styrka för nya hashar")
+                .register(registry));
+
+        BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(strength);
+        DelegatingPasswordEncoder delegating = new DelegatingPasswordEncoder("bcrypt", Map.of("bcrypt", bcrypt));
+        delegating.setDefaultPasswordEncoderForMatches(bcrypt);     // Gamla hashar utan {bcrypt}-prefix
+
+        if (!env.getProperty("library.security.password-hashing.enabled", Boolean.class, true)) {
+            return delegating;
+        }
+
+        // 0 = halva antalet kärnor, så att resten alltid finns kvar för övriga requests
+        int threads = env.getProperty("library.security.password-hashing.threads", Integer.class, 0);
+        if (threads <= 0) {
+            threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        }
+
+        BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(delegating, threads,
+                Math.max(1, env.getProperty("library.security.password-hashing.queue-capacity", Integer.class, 32)),
+                env.getProperty("library.security.password-hashing.retry-after-seconds", Long.class, 1L));
+        meterRegistry.ifAvailable(encoder::registerMetrics);
+        return encoder;
+    }
+
+
+    private int bcryptStrength() {
+        String configured = env.getProperty("library.security.password-hashing.bcrypt-strength", "auto").trim();
+        if (!configured.equalsIgnoreCase("auto")) {
+            int strength = Integer.parseInt(configured);
+            if (strength < 4 || strength > 31) {
+                throw new IllegalStateException(
+                        "library.security.password-hashing.bcrypt-strength måste vara 4-31 eller auto, fick " + strength);
+            }
+            return strength;
+        }
+
+        long target = env.getProperty("library.security.password-hashing.target-verify-ms", Long.class, 50L);
+        int minStrength = env.getProperty("library.security.password-hashing.min-strength", Integer.class, 10);
+
+        long start = System.currentTimeMillis();
+        int strength = BCryptCalibration.chooseStrength(target, minStrength);
+        logger.info("BCrypt-styrka {} vald (mål {} ms per verifiering, kalibrering {} ms)",
+                strength, target, System.currentTimeMillis() - start);
+        return strength;
     }
 
 }
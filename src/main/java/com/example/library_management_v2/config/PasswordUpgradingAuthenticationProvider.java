@@ -0,0 +1,39 @@
+package com.example.library_management_v2.config;
+
+import com.example.library_management_v2.exception.PasswordHashingBusyException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetails;
+
+/**
+ * DaoAuthenticationProvider där uppgraderingen av lösenordshashen aldrig stoppar en inloggning
+ *
+ * Efter en lyckad verifiering hashar DaoAuthenticationProvider om lösenordet om den sparade hashen
+ * är äldre eller svagare (se PasswordConfig). Den hashningen går via den begränsade poolen
+ * (BoundedPasswordEncoder) och kan avvisas med PasswordHashingBusyException. Lösenordet är då
+ * redan verifierat, så inloggningen ska lyckas ändå (inte 429) - hashen uppgraderas nästa gång.
+ */
+public class PasswordUpgradingAuthenticationProvider extends DaoAuthenticationProvider {
+
+    private static final Logger log = LoggerFactory.getLogger(PasswordUpgradingAuthenticationProvider.class);
+
+
+    @Override
+    protected Authentication createSuccessAuthentication(Object principal, Authentication authentication, UserDetails user) {
+        try {
+            return super.createSuccessAuthentication(principal, authentication, user);
+        } catch (PasswordHashingBusyException e) {
+            log.info("Hoppar över uppgradering av lösenordshashen för {}: hashningen är full", user.getUsername());
+
+            // Samma token som AbstractUserDetailsAuthenticationProvider skapar, utan uppgraderingen
+            // (ingen GrantedAuthoritiesMapper är satt, så behörigheterna används som de är)
+            UsernamePasswordAuthenticationToken result = UsernamePasswordAuthenticationToken.authenticated(
+                    principal, authentication.getCredentials(), user.getAuthorities());
+            result.setDetails(authentication.getDetails());
+            return result;
+        }
+    }
+}
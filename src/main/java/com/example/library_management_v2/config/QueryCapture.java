@@ -0,0 +1,38 @@
+package com.example.library_management_v2.config;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Fångar SQL:en som Hibernate skickar på den egna tråden - frågeplanskontrollen i SQLiteMigrations
+// kontrollerar exakt de frågor som repositorierna ställer, inte en handskriven kopia av dem
+// Registreras som hibernate.session_factory.statement_inspector. Utanför capture() gör den ingenting
+
+final class QueryCapture implements StatementInspector {
+
+    private static final ThreadLocal<List<String>> CAPTURED = new ThreadLocal<>();
+
+
+    // Kör work och returnera all SQL som Hibernate skickade under tiden, i ordning
+    static List<String> capture(Runnable work) {
+        List<String> statements = new ArrayList<>();
+        CAPTURED.set(statements);
+        try {
+            work.run();
+        } finally {
+            CAPTURED.remove();
+        }
+        return statements;
+    }
+
+
+    @Override
+    public String inspect(String sql) {
+        List<String> statements = CAPTURED.get();
+        if (statements != null) {
+            statements.add(sql);
+        }
+        return sql;
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.library_management_v2.config;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Kör om metoden (och dess transaktion) om SQLite svarar SQLITE_BUSY/SQLITE_LOCKED
+// Används tillsammans med @Transactional - se SQLiteBusyRetryAspect
+
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RetryOnBusy {
+}
@@ -0,0 +1,70 @@
+package com.example.library_management_v2.config;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Håller SQLite-connections i ett rent läge när BEGIN IMMEDIATE misslyckas
+ *
+ * Drivrutinen kör BEGIN i setAutoCommit(false), men markerar connection som "i transaktion"
+ * innan BEGIN körs. Ger BEGIN SQLITE_BUSY blir connection kvar i det läget utan att någon
+ * transaktion finns - rollback misslyckas ("no transaction is active"), Spring kastar då
+ * rollback-felet istället för SQLITE_BUSY, och SQLiteBusyRetryAspect kan inte se att det
+ * var ett låsfel som är värt att försöka igen.
+ *
+ * Här återställs autocommit direkt när BEGIN misslyckas, och rollback utan öppen transaktion
+ * blir en no-op (det finns inget att rulla tillbaka). Bara anrop på själva connection-objektet
+ * passerar här - inte satser eller ResultSet.
+ */
+public class SQLiteBeginGuard extends DelegatingDataSource {
+
+    public SQLiteBeginGuard(DataSource targetDataSource) {
+        super(targetDataSource);
+    }
+
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return guard(super.getConnection());
+    }
+
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return guard(super.getConnection(username, password));
+    }
+
+
+    private static Connection guard(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    String name = method.getName();
+                    if (name.equals("rollback") && args == null && connection.getAutoCommit()) {
+                        return null;
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        if (name.equals("setAutoCommit") && Boolean.FALSE.equals(args[0])) {
+                            restoreAutoCommit(connection);
+                        }
+                        throw e.getCause();
+                    }
+                });
+    }
+
+
+    // Ingen transaktion startades - "COMMIT" misslyckas därför också, men läget blir rätt
+    private static void restoreAutoCommit(Connection connection) {
+        try {
+            connection.setAutoCommit(true);
+        } catch (SQLException ignored) {
+            // Förväntat: "cannot commit - no transaction is active"
+        }
+    }
+}
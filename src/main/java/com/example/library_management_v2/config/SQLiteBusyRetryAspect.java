@@ -0,0 +1,127 @@
+package com.example.library_management_v2.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.sqlite.SQLiteErrorCode;
+import org.sqlite.SQLiteException;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kör om @RetryOnBusy-metoder när SQLite är upptagen (SQLITE_BUSY / SQLITE_LOCKED)
+ *
+ * busy_timeout låter drivrutinen vänta på låset en stund, men räcker inte alltid - t.ex. när en
+ * annan process håller filen låst länge eller när en WAL-checkpoint pågår. Då rullas hela
+ * transaktionen tillbaka och metoden körs om efter en backoff (exponentiell med jitter).
+ *
+ * Aspekten ligger UTANFÖR transaktionen (lägre order än @Transactional) så att varje försök
+ * får en egen transaktion. Anropas metoden inifrån en redan pågående transaktion görs inga
+ * omförsök här - det är den yttre transaktionen som måste köras om.
+ *
+ * Inställningar: library.sqlite.busy-retry.* - metrics:
+ * - library.sqlite.busy.retries: antal omförsök (tag method)
+ * - library.sqlite.busy.wait: tid som gått förlorad per misslyckat försök (försöket + backoff)
+ * - library.sqlite.busy.exhausted: anrop som gav upp efter max-attempts
+ */
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 1)   // Före (utanför) transaktionsinterceptorn
+public class SQLiteBusyRetryAspect {
+
+    private static final Logger logger = LoggerFactory.getLogger(SQLiteBusyRetryAspect.class);
+
+    @Autowired
+    private Environment env;
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    private int maxAttempts;
+    private long initialBackoffMs;
+    private long maxBackoffMs;
+
+
+    @PostConstruct
+    public void init() {
+        maxAttempts = Math.max(1, env.getProperty("library.sqlite.busy-retry.max-attempts", Integer.class, 4));
+        initialBackoffMs = env.getProperty("library.sqlite.busy-retry.initial-backoff-ms", Long.class, 20L);
+        maxBackoffMs = env.getProperty("library.sqlite.busy-retry.max-backoff-ms", Long.class, 500L);
+    }
+
+
+    @Around("@annotation(com.example.library_management_v2.config.RetryOnBusy)")
+    public Object retryOnBusy(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return joinPoint.proceed();
+        }
+
+        String method = joinPoint.getSignature().getDeclaringType().getSimpleName()
+                + "." + joinPoint.getSignature().getName();
+        long backoff = initialBackoffMs;
+
+        for (int attempt = 1; ; attempt++) {
+            long start = System.nanoTime();
+            try {
+                return joinPoint.proceed();
+            } catch (Throwable e) {
+                if (!isBusy(e)) {
+                    throw e;
+                }
+                if (attempt >= maxAttempts) {
+                    count("library.sqlite.busy.exhausted", method);
+                    logger.warn("{}: SQLite upptagen efter {} försök - ger upp", method, attempt);
+                    throw e;
+                }
+
+                // Full jitter: slumpa väntetiden så att flera väntande inte försöker igen samtidigt
+                long sleep = ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1);
+                logger.debug("{}: SQLite upptagen (försök {}), försöker igen om {} ms", method, attempt, sleep);
+                Thread.sleep(sleep);
+
+                count("library.sqlite.busy.retries", method);
+                meterRegistry.ifAvailable(registry -> Timer.builder("library.sqlite.busy.wait")
+                        .tag("method", method)
+                        .register(registry)
+                        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+
+                backoff = Math.min(backoff * 2, maxBackoffMs);
+            }
+        }
+    }
+
+
+    // SQLITE_BUSY/SQLITE_LOCKED någonstans i orsakskedjan (Hibernate och Spring slår in felet i flera lager)
+    // (SQLiteBeginGuard ser till att rollback-fel inte ersätter SQLITE_BUSY från BEGIN)
+    static boolean isBusy(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLiteException sqlite) {
+                int primary = sqlite.getResultCode().code & 0xFF;
+                return primary == SQLiteErrorCode.SQLITE_BUSY.code || primary == SQLiteErrorCode.SQLITE_LOCKED.code;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+
+    private void count(String name, String method) {
+        meterRegistry.ifAvailable(registry -> Counter.builder(name).tag("method", method).register(registry).increment());
+    }
+}
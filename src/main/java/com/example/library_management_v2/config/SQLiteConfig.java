@@ -1,24 +1,101 @@
 package com.example.library_management_v2.config;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Primary;
 import org.springframework.context.annotation.Profile;
 import org.springframework.core.env.Environment;
 import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.sqlite.SQLiteConfig.Pragma;
+import org.sqlite.SQLiteDataSource;
 
 import javax.sql.DataSource;
 import java.util.Objects;
 
+/**
+ * DataSource-konfiguration för SQLite-filen.
+ *
+ * SQLite tillåter många samtidiga läsare men bara EN skrivare åt gången.
+ * Därför använder vi två connection pools (HikariCP) mot samma fil:
+ * 1. En skriv-pool med exakt en connection - alla skrivande transaktioner köar här
+ * 2. En läs-pool med flera read-only connections - används av readOnly-transaktioner
+ *
+ * Vilken pool som används avgörs av LazyConnectionDataSourceProxy: connection hämtas först
+ * när första SQL-satsen körs, och då vet vi om transaktionen är readOnly eller inte.
+ *
+ * Varje connection som öppnas får samma pragma-profil (library.sqlite.pragma.*).
+ * Med journal_mode=WAL kan läsarna fortsätta läsa medan skrivaren skriver,
+ * i standardläget (rollback journal) låser varje skrivning ute alla läsare.
+ *
+ * Sätt library.sqlite.pool.enabled=false för att gå tillbaka till DriverManagerDataSource
+ * (en ny connection per anrop).
+ */
 @Configuration
 @Profile("!test") // Detta betyder "aktivera bara när 'test' profilen INTE är aktiv"
 public class SQLiteConfig {
 
+    private static final Logger logger = LoggerFactory.getLogger(SQLiteConfig.class);
+
     @Autowired
     private Environment env;
 
-    @Bean
+    // Skriv-poolen: en enda connection eftersom SQLite ändå bara släpper in en skrivare
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "library.sqlite.pool.enabled", havingValue = "true", matchIfMissing = true)
+    public HikariDataSource sqliteWriterDataSource() {
+        HikariConfig config = basePoolConfig("sqlite-writer", false);
+        config.setMaximumPoolSize(1);
+        config.setMinimumIdle(1);
+        return new HikariDataSource(config);
+    }
+
+    // Läs-poolen: flera read-only connections som kan läsa parallellt
+    // Skapas efter skriv-poolen så att journal_mode=WAL redan är satt på filen
+    @Bean(destroyMethod = "close")
+    @DependsOn("sqliteWriterDataSource")
+    @ConditionalOnProperty(name = "library.sqlite.pool.enabled", havingValue = "true", matchIfMissing = true)
+    public HikariDataSource sqliteReaderDataSource() {
+        int readers = env.getProperty("library.sqlite.pool.readers", Integer.class, 4);
+        if (virtualThreads()) {
+            readers = limitReadersToCarriers(readers);
+        }
+
+        HikariConfig config = basePoolConfig("sqlite-reader", true);
+        config.setMaximumPoolSize(readers);
+        config.setMinimumIdle(env.getProperty("library.sqlite.pool.min-idle-readers", Integer.class, 1));
+        return new HikariDataSource(config);
+    }
+
+    // Den DataSource som JPA/Hibernate använder - väljer skriv- eller läs-pool per transaktion
+    @Bean(name = "dataSource")
+    @Primary
+    @ConditionalOnProperty(name = "library.sqlite.pool.enabled", havingValue = "true", matchIfMissing = true)
+    public DataSource pooledDataSource(@Qualifier("sqliteWriterDataSource") HikariDataSource writer,
+                                       @Qualifier("sqliteReaderDataSource") HikariDataSource reader) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(writer);
+        dataSource.setReadOnlyDataSource(reader);
+        return dataSource;
+    }
+
+    // Gamla beteendet: ingen pool, en ny connection öppnas för varje anrop
+    @Bean(name = "dataSource")
+    @ConditionalOnProperty(name = "library.sqlite.pool.enabled", havingValue = "false")
     public DataSource dataSource() {
+        // Utan pool finns ingen övre gräns för hur många virtuella trådar som sitter i drivrutinen samtidigt
+        if (virtualThreads()) {
+            throw new IllegalStateException(
+                    "spring.threads.virtual.enabled=true kräver library.sqlite.pool.enabled=true");
+        }
+
         final DriverManagerDataSource dataSource = new DriverManagerDataSource();
         dataSource.setDriverClassName(Objects.requireNonNull(env.getProperty("spring.datasource.driver-class-name")));
         dataSource.setUrl(env.getProperty("spring.datasource.url"));
@@ -26,4 +103,93 @@ public class SQLiteConfig {
         dataSource.setPassword(env.getProperty("spring.datasource.password"));
         return dataSource;
     }
-}
\ No newline at end of file
+
+
+    private boolean virtualThreads() {
+        return env.getProperty("spring.threads.virtual.enabled", Boolean.class, false);
+    }
+
+
+    /**
+     * Med virtuella trådar (spring.threads.virtual.enabled=true) körs requests på ett fåtal
+     * bärartrådar (carrier threads, en per kärna som standard). sqlite-jdbc anropar SQLite via JNI
+     * inifrån synchronized-metoder, och under tiden sitter den virtuella tråden fast på sin bärartråd
+     * (pinning). Poolerna begränsar hur många som kan vara i drivrutinen samtidigt: läsarna plus
+     * skriv-connectionen. Läs-poolen hålls därför mindre än antalet bärartrådar, så att det alltid
+     * finns en bärartråd kvar till övriga requests. Skriv-connectionen används i första hand av
+     * SQLiteWriter, som är en vanlig plattformstråd.
+     *
+     * Med en enda bärartråd (1 kärna) går det inte: läs-poolen behöver minst en connection, och
+     * medan den används står alla andra virtuella trådar still. Det loggas som varning - sätt
+     * -Djdk.virtualThreadScheduler.parallelism=2 eller högre, eller stäng av virtuella trådar.
+     */
+    private int limitReadersToCarriers(int readers) {
+        int carriers = Integer.getInteger("jdk.virtualThreadScheduler.parallelism",
+                Runtime.getRuntime().availableProcessors());
+        if (carriers < 2) {
+            logger.warn("Virtuella trådar med {} bärartråd: en läsning i SQLite blockerar alla andra requests. "
+                    + "Sätt -Djdk.virtualThreadScheduler.parallelism=2 eller högre, eller "
+                    + "spring.threads.virtual.enabled=false", carriers);
+            return 1;
+        }
+
+        int limit = carriers - 1;
+        if (readers > limit) {
+            logger.warn("Virtuella trådar: läs-poolen begränsas från {} till {} connections ({} bärartrådar)",
+                    readers, limit, carriers);
+            return limit;
+        }
+        return readers;
+    }
+
+
+    // Gemensamma inställningar för båda pools
+    private HikariConfig basePoolConfig(String poolName, boolean readOnly) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(poolName);
+        config.setDataSource(new SQLiteBeginGuard(createSQLiteDataSource(readOnly)));
+        config.setReadOnly(readOnly);
+        config.setConnectionTimeout(env.getProperty("library.sqlite.pool.connection-timeout-ms", Long.class, 30000L));
+        config.setIdleTimeout(env.getProperty("library.sqlite.pool.idle-timeout-ms", Long.class, 600000L));
+        config.setMaxLifetime(env.getProperty("library.sqlite.pool.max-lifetime-ms", Long.class, 1800000L));
+        return config;
+    }
+
+    // Skapar själva SQLite-drivrutinens DataSource
+    // Read-only måste sättas när filen öppnas, det går inte att ändra i efterhand
+    private SQLiteDataSource createSQLiteDataSource(boolean readOnly) {
+        org.sqlite.SQLiteConfig sqliteConfig = new org.sqlite.SQLiteConfig();
+        sqliteConfig.setReadOnly(readOnly);
+        applyPragmaProfile(sqliteConfig, readOnly);
+
+        SQLiteDataSource dataSource = new SQLiteDataSource(sqliteConfig);
+        dataSource.setUrl(Objects.requireNonNull(env.getProperty("spring.datasource.url")));
+        return dataSource;
+    }
+
+
+    // Pragma-profilen körs av drivrutinen varje gång en ny connection öppnas
+    private void applyPragmaProfile(org.sqlite.SQLiteConfig sqliteConfig, boolean readOnly) {
+        // journal_mode sparas i själva filen och kräver skrivrättighet,
+        // därför sätts det bara av skrivaren (läsarna ärver det från filen)
+        if (!readOnly) {
+            sqliteConfig.setPragma(Pragma.JOURNAL_MODE, env.getProperty("library.sqlite.pragma.journal-mode", "WAL"));
+
+            // Ta skrivlåset direkt vid BEGIN istället för att uppgradera från läslås mitt i transaktionen
+            sqliteConfig.setTransactionMode(env.getProperty("library.sqlite.pragma.transaction-mode", "IMMEDIATE"));
+        }
+
+        // FULL: fsync vid varje commit, så att en bekräftad skrivning finns kvar även efter strömavbrott.
+        // Skrivtråden samlar många skrivningar per commit (group commit), så fsyncen betalas en gång per grupp.
+        // NORMAL (i WAL-läge ingen korruption, men senaste commiten kan gå förlorad) är billigare utan skrivtråden.
+        sqliteConfig.setPragma(Pragma.SYNCHRONOUS, env.getProperty("library.sqlite.pragma.synchronous", "FULL"));
+
+        // Negativt värde = storlek i KiB (-20000 ≈ 20 MB sidcache per connection)
+        sqliteConfig.setPragma(Pragma.CACHE_SIZE, env.getProperty("library.sqlite.pragma.cache-size", "-20000"));
+        sqliteConfig.setPragma(Pragma.MMAP_SIZE, env.getProperty("library.sqlite.pragma.mmap-size", "268435456"));
+        sqliteConfig.setPragma(Pragma.TEMP_STORE, env.getProperty("library.sqlite.pragma.temp-store", "MEMORY"));
+
+        // Hur länge en connection väntar på ett lås innan SQLITE_BUSY kastas
+        sqliteConfig.setBusyTimeout(env.getProperty("library.sqlite.pragma.busy-timeout-ms", Integer.class, 5000));
+    }
+}
@@ -0,0 +1,333 @@
+package com.example.library_management_v2.config;
+
+import com.example.library_management_v2.entity.User;
+import com.example.library_management_v2.repository.AuthorRepository;
+import com.example.library_management_v2.repository.BookRepository;
+import com.example.library_management_v2.repository.LoanRepository;
+import com.example.library_management_v2.repository.OverdueLoanRepository;
+import com.example.library_management_v2.repository.RefreshTokenRepository;
+import com.example.library_management_v2.repository.UserRepository;
+import com.example.library_management_v2.service.OverdueLoanService;
+import jakarta.annotation.PostConstruct;
+import org.hibernate.cfg.AvailableSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+// Versionerade schemaändringar för SQLite-filen (ddl-auto=none, så Hibernate ändrar aldrig schemat själv)
+//
+// Varje migrering körs en gång, i en egen transaktion, och sparas i schema_version.
+// Nya ändringar läggs till sist i MIGRATIONS med nästa versionsnummer - ändra aldrig en migrering
+// som redan har släppts. Stegen är idempotenta (IF NOT EXISTS), så en databasfil som redan fått
+// ändringarna på annat sätt klarar sig också.
+//
+// Efter migreringarna anropas varje repository-metod en gång i en transaktion som rullas tillbaka.
+// SQL:en som Hibernate då skickar (QueryCapture) kontrolleras med EXPLAIN QUERY PLAN - en fråga
+// som läser hela tabellen stoppar uppstarten (library.sqlite.migrations.verify-query-plans=false
+// stänger av kontrollen). Metoder som avsiktligt läser hela tabellen står i INTENTIONAL_SCANS,
+// och SQLiteMigrationsTest kontrollerar att varje repository-metod finns i den ena eller andra listan.
+// Körs innan webbservern startar - ingen request kan hinna använda en kolumn eller ett index som inte finns än
+
+@Component
+@Profile("!test")
+public class SQLiteMigrations {
+
+    private static final Logger logger = LoggerFactory.getLogger(SQLiteMigrations.class);
+
+    // Ett steg i en migrering
+    interface Step {
+        void apply(JdbcTemplate jdbcTemplate);
+    }
+
+    record Migration(int version, String description, List<Step> steps) {
+    }
+
+    // En fråga som ska gå via ett index - namnet är metoden som ställer den
+    record PlanCheck(String name, String sql) {
+    }
+
+    // Repositorierna som frågeplanskontrollen anropar
+    record Repositories(UserRepository users, RefreshTokenRepository refreshTokens, AuthorRepository authors,
+                        BookRepository books, LoanRepository loans, OverdueLoanRepository overdueLoans) {
+    }
+
+    // Ett anrop av en repository-metod - argumenten spelar ingen roll, bara SQL:en som skickas
+    record Probe(String name, Consumer<Repositories> call) {
+    }
+
+
+    static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "Optimistisk låsning av böcker (books.version)", List.of(
+                    addColumn("books", "version", "INTEGER NOT NULL DEFAULT 0"))),
+
+            new Migration(2, "Försenade lån (overdue_loans)", List.of(
+                    sql("CREATE INDEX IF NOT EXISTS idx_loans_returned_due ON loans (returned_date, due_date)"),
+                    sql("CREATE TABLE IF NOT EXISTS overdue_loans ("
+                            + "loan_id INTEGER PRIMARY KEY REFERENCES loans (loan_id) ON DELETE CASCADE, "
+                            + "detected_date DATETIME NOT NULL)"))),
+
+            // users.email och refresh_tokens.token har redan index via UNIQUE i grundschemat
+            new Migration(3, "Index för uppslagningar och främmande nycklar", List.of(
+                    sql("CREATE INDEX IF NOT EXISTS idx_loans_user_id ON loans (user_id)"),
+                    sql("CREATE INDEX IF NOT EXISTS idx_loans_book_id ON loans (book_id)"),
+                    sql("CREATE INDEX IF NOT EXISTS idx_books_author_id ON books (author_id)"),
+                    sql("CREATE INDEX IF NOT EXISTS idx_authors_last_name ON authors (last_name)"),
+                    sql("CREATE INDEX IF NOT EXISTS idx_refresh_tokens_user_id ON refresh_tokens (user_id)"),
+                    sql("CREATE INDEX IF NOT EXISTS idx_refresh_tokens_expiry ON refresh_tokens (expiry_date)"),
+                    sql("PRAGMA optimize"))),
+
+            // rowid = book_id. Triggers håller indexet i synk med books och authors (se BookSearchIndex)
+            new Migration(4, "Fulltextindex för boksökning (books_fts)", List.of(
+                    sql("CREATE VIRTUAL TABLE IF NOT EXISTS books_fts USING fts5("
+                            + "title, author_first_name, author_last_name, "
+                            + "tokenize = 'unicode61 remove_diacritics 2', prefix = '2 3')"),
+                    sql("CREATE TRIGGER IF NOT EXISTS books_fts_after_insert AFTER INSERT ON books BEGIN "
+                            + "INSERT INTO books_fts (rowid, title, author_first_name, author_last_name) VALUES ("
+                            + "new.book_id, new.title, "
+                            + "(SELECT first_name FROM authors WHERE author_id = new.author_id), "
+                            + "(SELECT last_name FROM authors WHERE author_id = new.author_id)); "
+                            + "END"),
+                    // Bara titel och författare - inte available_copies som ändras vid varje lån
+                    sql("CREATE TRIGGER IF NOT EXISTS books_fts_after_update AFTER UPDATE OF book_id, title, author_id ON books BEGIN "
+                            + "DELETE FROM books_fts WHERE rowid = old.book_id; "
+                            + "INSERT INTO books_fts (rowid, title, author_first_name, author_last_name) VALUES ("
+                            + "new.book_id, new.title, "
+                            + "(SELECT first_name FROM authors WHERE author_id = new.author_id), "
+                            + "(SELECT last_name FROM authors WHERE author_id = new.author_id)); "
+                            + "END"),
+                    sql("CREATE TRIGGER IF NOT EXISTS books_fts_after_delete AFTER DELETE ON books BEGIN "
+                            + "DELETE FROM books_fts WHERE rowid = old.book_id; "
+                            + "END"),
+                    sql("CREATE TRIGGER IF NOT EXISTS authors_fts_after_update AFTER UPDATE OF first_name, last_name ON authors BEGIN "
+                            + "UPDATE books_fts SET author_first_name = new.first_name, author_last_name = new.last_name "
+                            + "WHERE rowid IN (SELECT book_id FROM books WHERE author_id = new.author_id); "
+                            + "END"),
+                    // Fyll indexet med de böcker som redan finns (tomt först, ifall tabellen fanns sedan tidigare)
+                    sql("DELETE FROM books_fts"),
+                    sql("INSERT INTO books_fts (rowid, title, author_first_name, author_last_name) "
+                            + "SELECT b.book_id, b.title, a.first_name, a.last_name "
+                            + "FROM books b LEFT JOIN authors a ON a.author_id = b.author_id")))
+    );
+
+
+    // Varje repository-metod som ska gå via ett index. Ärvda JpaRepository-metoder (findById, save,
+    // delete ...) går på primärnyckeln och finns inte med, inte heller de i INTENTIONAL_SCANS
+    static final List<Probe> PROBES = List.of(
+            new Probe("UserRepository.findByEmail", r -> r.users().findByEmail("probe@example.com")),
+            new Probe("UserRepository.updatePassword", r -> r.users().updatePassword("probe@example.com", "probe")),
+            new Probe("RefreshTokenRepository.findByToken", r -> r.refreshTokens().findByToken("probe")),
+            new Probe("RefreshTokenRepository.findByUser", r -> r.refreshTokens().findByUser(probeUser())),
+            new Probe("RefreshTokenRepository.deleteByUser", r -> r.refreshTokens().deleteByUser(probeUser())),
+            new Probe("RefreshTokenRepository.deleteExpiredTokens", r -> r.refreshTokens().deleteExpiredTokens("probe")),
+            new Probe("AuthorRepository.findByLastName", r -> r.authors().findByLastName("probe")),
+            new Probe("AuthorRepository.findByFirstNameAndLastNameAndBirthYear",
+                    r -> r.authors().findByFirstNameAndLastNameAndBirthYear("probe", "probe", 1900)),
+            new Probe("BookRepository.findByIdGreaterThanOrderByIdAsc",
+                    r -> r.books().findByIdGreaterThanOrderByIdAsc(0L, Limit.of(1))),
+            new Probe("BookRepository.findByIdIn", r -> r.books().findByIdIn(List.of(1L, 2L))),
+            new Probe("BookRepository.findBookDetailsByIds", r -> r.books().findBookDetailsByIds(List.of(1L, 2L))),
+            new Probe("BookRepository.reserveCopy", r -> r.books().reserveCopy(0L)),
+            new Probe("BookRepository.releaseCopy", r -> r.books().releaseCopy(0L)),
+            new Probe("BookRepository.releaseCopies", r -> r.books().releaseCopies(List.of(1L, 2L), 1)),
+            new Probe("LoanRepository.findByUserId", r -> r.loans().findByUserId(0L)),
+            new Probe("LoanRepository.findByUserIdAndReturnedDateIsNull", r -> r.loans().findByUserIdAndReturnedDateIsNull(0L)),
+            new Probe("LoanRepository.findLoanDetailsByUserId", r -> r.loans().findLoanDetailsByUserId(0L)),
+            new Probe("LoanRepository.findByIdIn", r -> r.loans().findByIdIn(List.of(1L, 2L))),
+            new Probe("LoanRepository.findMaxId", r -> r.loans().findMaxId()),
+            new Probe("LoanRepository.insertLoans",
+                    r -> r.loans().insertLoans(0L, List.of(1L, 2L), LocalDate.now(), LocalDate.now())),
+            new Probe("LoanRepository.findLoanDetailsByUserIdAfter", r -> r.loans().findLoanDetailsByUserIdAfter(0L, 0L)),
+            new Probe("LoanRepository.findLoanDetailsByIds", r -> r.loans().findLoanDetailsByIds(List.of(1L, 2L))),
+            new Probe("OverdueLoanRepository.findOverdueLoanDetails",
+                    r -> r.overdueLoans().findOverdueLoanDetails(0L, Limit.of(1))),
+            new Probe("OverdueLoanRepository.deleteByLoanIds", r -> r.overdueLoans().deleteByLoanIds(List.of(1L, 2L)))
+    );
+
+    // Repository-metoder som läser hela tabellen med flit - där hjälper inget B-tree-index
+    static final Map<String, String> INTENTIONAL_SCANS = Map.of(
+            "BookRepository.findAll", "hela katalogen",
+            "BookRepository.streamAllWithAuthor", "hela katalogen (export, cache)",
+            "BookRepository.streamSearchableBooks", "hela katalogen (sökindexet i minnet)",
+            "BookRepository.findAllBookDetails", "katalogen i id-ordning, sidvis med LIMIT/OFFSET",
+            "BookRepository.searchBookDetails", "LIKE '%...%' (när FTS5 är avstängt)",
+            "BookRepository.searchBookDetailsMatchingAll", "LIKE '%...%' (när FTS5 är avstängt)",
+            "AuthorRepository.findByLastNameContainingIgnoreCase", "LIKE '%...%'"
+    );
+
+    // Frågor som går direkt via JdbcTemplate - SQL:en är densamma som tjänsten använder
+    static final List<PlanCheck> JDBC_CHECKS = List.of(
+            new PlanCheck("OverdueLoanService.findCandidates", OverdueLoanService.CANDIDATES_SQLITE)
+    );
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private Environment env;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RefreshTokenRepository refreshTokenRepository;
+
+    @Autowired
+    private AuthorRepository authorRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @Autowired
+    private OverdueLoanRepository overdueLoanRepository;
+
+
+    // QueryCapture ser all SQL som Hibernate skickar (men fångar bara inom QueryCapture.capture)
+    @Bean
+    static HibernatePropertiesCustomizer queryCaptureCustomizer() {
+        return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, new QueryCapture());
+    }
+
+
+    @PostConstruct
+    public void apply() {
+        migrate();
+        if (env.getProperty("library.sqlite.migrations.verify-query-plans", Boolean.class, true)) {
+            verifyQueryPlans();
+        }
+    }
+
+
+    // Kör de migreringar som inte finns i schema_version än, i versionsordning
+    void migrate() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS schema_version ("
+                + "version INTEGER PRIMARY KEY, description TEXT NOT NULL, applied_at TEXT NOT NULL)");
+
+        Set<Integer> applied = new HashSet<>(
+                jdbcTemplate.queryForList("SELECT version FROM schema_version", Integer.class));
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        for (Migration migration : MIGRATIONS) {
+            if (applied.contains(migration.version())) {
+                continue;
+            }
+            try {
+                transaction.executeWithoutResult(status -> {
+                    for (Step step : migration.steps()) {
+                        step.apply(jdbcTemplate);
+                    }
+                    jdbcTemplate.update("INSERT INTO schema_version (version, description, applied_at) VALUES (?, ?, ?)",
+                            migration.version(), migration.description(), LocalDateTime.now().toString());
+                });
+            } catch (RuntimeException e) {
+                // Starta inte mot ett halvt migrerat schema
+                throw new IllegalStateException("Schemamigrering " + migration.version()
+                        + " (" + migration.description() + ") misslyckades: " + e.getMessage(), e);
+            }
+            logger.info("Schema migrerat till version {}: {}", migration.version(), migration.description());
+        }
+    }
+
+
+    // Stoppa uppstarten om någon av repositoriernas eller JDBC-frågorna läser en hel tabell
+    void verifyQueryPlans() {
+        List<PlanCheck> checks = new ArrayList<>(JDBC_CHECKS);
+        checks.addAll(captureRepositoryQueries());
+        verifyQueryPlans(checks);
+    }
+
+
+    // Anropa varje repository-metod i PROBES och fånga SQL:en - transaktionen rullas alltid tillbaka
+    List<PlanCheck> captureRepositoryQueries() {
+        Repositories repositories = new Repositories(userRepository, refreshTokenRepository, authorRepository,
+                bookRepository, loanRepository, overdueLoanRepository);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        List<PlanCheck> checks = new ArrayList<>();
+        for (Probe probe : PROBES) {
+            List<String> statements = transaction.execute(status -> {
+                status.setRollbackOnly();
+                return QueryCapture.capture(() -> probe.call().accept(repositories));
+            });
+            if (statements.isEmpty()) {
+                // Kontrollen får inte tyst sluta gälla för en metod
+                throw new IllegalStateException("Frågeplanskontroll: " + probe.name() + " skickade ingen SQL");
+            }
+            statements.forEach(sql -> checks.add(new PlanCheck(probe.name(), sql)));
+        }
+        return checks;
+    }
+
+
+    void verifyQueryPlans(List<PlanCheck> checks) {
+        List<String> tableScans = new ArrayList<>();
+        for (PlanCheck check : checks) {
+            List<String> plan = jdbcTemplate.query("EXPLAIN QUERY PLAN " + check.sql(),
+                    (rs, row) -> rs.getString("detail"));
+            for (String detail : plan) {
+                if (isTableScan(detail)) {
+                    tableScans.add(check.name() + ": " + detail);
+                }
+            }
+        }
+
+        if (!tableScans.isEmpty()) {
+            throw new IllegalStateException("Frågor utan index (EXPLAIN QUERY PLAN): " + String.join("; ", tableScans));
+        }
+        logger.info("Frågeplaner kontrollerade: alla {} frågor använder index", checks.size());
+    }
+
+
+    // En användare som bara har ett id - för metoderna som tar en User som parameter
+    private static User probeUser() {
+        User user = new User();
+        user.setId(0L);
+        return user;
+    }
+
+
+    // "SCAN loans" läser hela tabellen, "SCAN loans USING INDEX ..." och "SEARCH ..." gör det inte
+    static boolean isTableScan(String detail) {
+        return detail.startsWith("SCAN ") && !detail.contains(" USING ") && !detail.equals("SCAN CONSTANT ROW");
+    }
+
+
+    static Step sql(String statement) {
+        return jdbcTemplate -> jdbcTemplate.execute(statement);
+    }
+
+
+    // ALTER TABLE ... ADD COLUMN saknar IF NOT EXISTS - kolla pragma_table_info först
+    static Step addColumn(String table, String column, String definition) {
+        return jdbcTemplate -> {
+            List<String> existing = jdbcTemplate.queryForList(
+                    "SELECT name FROM pragma_table_info(?)", String.class, table);
+            if (!existing.contains(column)) {
+                jdbcTemplate.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+            }
+        };
+    }
+}
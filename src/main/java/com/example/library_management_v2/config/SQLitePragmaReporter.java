@@ -0,0 +1,57 @@
+package com.example.library_management_v2.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+// Loggar vid uppstart vilka SQLite-pragmas som faktiskt gäller på varje pool
+// Pragmas som drivrutinen inte kunde sätta (t.ex. WAL på en read-only fil) syns direkt här
+
+@Component
+@Profile("!test")
+public class SQLitePragmaReporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(SQLitePragmaReporter.class);
+
+    private static final String[] REPORTED_PRAGMAS = {
+            "journal_mode", "synchronous", "cache_size", "mmap_size", "temp_store", "busy_timeout"
+    };
+
+    // Tom lista om poolen är avstängd (library.sqlite.pool.enabled=false)
+    @Autowired(required = false)
+    private List<HikariDataSource> pools = new ArrayList<>();
+
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reportPragmas() {
+        for (HikariDataSource pool : pools) {
+            try (Connection connection = pool.getConnection();
+                 Statement statement = connection.createStatement()) {
+
+                List<String> values = new ArrayList<>();
+                for (String pragma : REPORTED_PRAGMAS) {
+                    try (ResultSet rs = statement.executeQuery("PRAGMA " + pragma)) {
+                        values.add(pragma + "=" + (rs.next() ? rs.getString(1) : "?"));
+                    }
+                }
+
+                logger.info("SQLite pool '{}' (max {} connections): {}",
+                        pool.getPoolName(), pool.getMaximumPoolSize(), String.join(", ", values));
+
+            } catch (Exception e) {
+                logger.warn("Kunde inte läsa SQLite-pragmas för pool '{}': {}", pool.getPoolName(), e.getMessage());
+            }
+        }
+    }
+}
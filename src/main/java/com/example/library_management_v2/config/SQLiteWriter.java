@@ -0,0 +1,444 @@
+package com.example.library_management_v2.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * En enda skrivtråd för SQLite med group commit
+ *
+ * SQLite tillåter bara en skrivare åt gången. Istället för att varje Tomcat-tråd öppnar en egen
+ * skrivtransaktion (och väntar på låset eller får SQLITE_BUSY) läggs skrivningarna i en kö.
+ * Skrivtråden tar allt som väntar i kön (högst library.sqlite.writer.max-batch) och kör det i
+ * EN transaktion - en commit och en fsync för hela gruppen. Anroparen väntar tills dess
+ * skrivning är committad, och får sedan metodens resultat eller undantag.
+ *
+ * Två sätt att skriva via kön:
+ * - @SingleWriter på en @Transactional service-metod (SQLiteWriterAspect)
+ * - execute(() -> repository.save(...)) för enstaka repository-anrop - bara själva skrivningen
+ *   läggs i kön, allt annat (t.ex. BCrypt) körs kvar på anroparens tråd
+ *
+ * Varje skrivning får en egen JDBC-savepoint. Misslyckas den rullas bara den tillbaka - även de
+ * TransactionSynchronization (t.ex. AfterCommit) som den hann registrera - och resten av gruppen
+ * committas som vanligt. Spring JPA har inga savepoints, så savepointen sätts direkt på connection,
+ * och transaktionshanteraren nedan låter bli att markera gruppens transaktion rollback-only när en
+ * @Transactional-metod på skrivtråden misslyckas. Mellan skrivningarna töms persistence context,
+ * så att nästa skrivning aldrig ser entiteter som en bulk-UPDATE (t.ex. reserveCopy) har gjort inaktuella.
+ *
+ * Har Hibernate självt markerat transaktionen rollback-only (t.ex. unikt index vid flush), eller ger
+ * skrivningen SQLITE_BUSY, går det inte att fortsätta i transaktionen. Skrivningarna före den är
+ * redan kvar i databasen efter savepointen och committas direkt på connection (med sina
+ * synkroniseringar). Bara den misslyckade skrivningen körs om (SQLITE_BUSY, library.sqlite.busy-retry.*)
+ * - en skrivning som har lyckats körs aldrig igen, så loggning och andra sidoeffekter sker en gång.
+ * Misslyckas själva COMMIT får alla skrivningar i gruppen felet, utan att köras om.
+ *
+ * Anroparen väntar högst library.sqlite.writer.timeout-ms (på plats i kön och på commit).
+ * Efter timeout körs skrivningen inte om den fortfarande ligger i kön, men en skrivning som
+ * redan har startat kan ändå bli committad. När skrivtråden stoppas får allt som ligger kvar
+ * i kön ett fel.
+ *
+ * Pågår det redan en skrivtransaktion på anroparens tråd körs skrivningen direkt i den - det gäller
+ * anrop inifrån skrivtråden själv och skrivningar som är en del av en större transaktion.
+ * En skrivning inifrån en read-only-transaktion är ett fel (den skulle hamna på en läs-connection).
+ * Läsningar går som tidigare via read-only-poolen (@Transactional(readOnly = true)).
+ *
+ * Metrics: library.sqlite.writer.batch.size, library.sqlite.writer.queue.wait, library.sqlite.writer.queue.size
+ */
+@Component
+public class SQLiteWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(SQLiteWriter.class);
+
+    // true på skrivtråden (se transactionManager)
+    private static final ThreadLocal<Boolean> WRITER_THREAD = ThreadLocal.withInitial(() -> false);
+
+    // En skrivning som väntar i kön
+    @FunctionalInterface
+    public interface Work<T> {
+        T run() throws Throwable;
+    }
+
+    private record Task(Work<?> work, CompletableFuture<Object> result, long queuedAt) {
+    }
+
+    // En grupp skrivningar i en transaktion
+    private static final class Group {
+        final List<Task> tasks;
+        final Object[] results;
+        final Throwable[] errors;
+        int ran;                // Antal skrivningar som har körts i transaktionen
+        int stoppedAt = -1;     // Skrivningen som gjorde transaktionen oanvändbar (se runGroup)
+        Throwable stopError;
+        List<TransactionSynchronization> synchronizations = List.of();  // Committade direkt på connection
+
+        Group(List<Task> tasks) {
+            this.tasks = tasks;
+            this.results = new Object[tasks.size()];
+            this.errors = new Throwable[tasks.size()];
+        }
+
+        // Anroparna till de första count skrivningarna får sitt resultat (eller sitt eget fel)
+        int complete(int count) {
+            int committed = 0;
+            for (int i = 0; i < count; i++) {
+                if (errors[i] != null) {
+                    tasks.get(i).result().completeExceptionally(errors[i]);
+                } else {
+                    tasks.get(i).result().complete(results[i]);
+                    committed++;
+                }
+            }
+            return committed;
+        }
+    }
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private Environment env;
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    private boolean enabled;
+    private int maxBatch;
+    private long timeoutMs;
+    private int maxAttempts;
+    private long initialBackoffMs;
+    private long maxBackoffMs;
+
+    private BlockingQueue<Task> queue;
+    private TransactionTemplate transaction;
+    private Thread thread;
+    private volatile boolean running;
+
+    private DistributionSummary batchSize;
+    private Timer queueWait;
+
+
+    @PostConstruct
+    public void init() {
+        enabled = env.getProperty("library.sqlite.writer.enabled", Boolean.class, true);
+        maxBatch = Math.max(1, env.getProperty("library.sqlite.writer.max-batch", Integer.class, 64));
+        timeoutMs = Math.max(1, env.getProperty("library.sqlite.writer.timeout-ms", Long.class, 60000L));
+        int capacity = Math.max(1, env.getProperty("library.sqlite.writer.queue-capacity", Integer.class, 1000));
+        maxAttempts = Math.max(1, env.getProperty("library.sqlite.busy-retry.max-attempts", Integer.class, 4));
+        initialBackoffMs = env.getProperty("library.sqlite.busy-retry.initial-backoff-ms", Long.class, 20L);
+        maxBackoffMs = env.getProperty("library.sqlite.busy-retry.max-backoff-ms", Long.class, 500L);
+
+        if (!enabled) {
+            return;
+        }
+
+        queue = new ArrayBlockingQueue<>(capacity);
+        transaction = new TransactionTemplate(transactionManager);
+
+        meterRegistry.ifAvailable(registry -> {
+            batchSize = DistributionSummary.builder("library.sqlite.writer.batch.size")
+                    .description("Antal skrivningar per commit")
+                    .register(registry);
+            queueWait = Timer.builder("library.sqlite.writer.queue.wait")
+                    .description("Tid i kön innan skrivningen startade")
+                    .register(registry);
+            Gauge.builder("library.sqlite.writer.queue.size", queue, BlockingQueue::size).register(registry);
+        });
+
+        running = true;
+        thread = new Thread(this::writeLoop, "sqlite-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+
+    // Kör det som redan ligger i kön innan databasen stängs
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        thread.join(TimeUnit.SECONDS.toMillis(30));
+    }
+
+
+    /**
+     * Kör en skrivning på skrivtråden och vänta tills den är committad
+     * Undantag från skrivningen kastas vidare på anroparens tråd
+     */
+    public <T> T execute(Supplier<T> work) {
+        try {
+            return submit(work::get);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    /**
+     * Transaktionshanteraren för hela appen - samma som Spring Boots egen JpaTransactionManager,
+     * men en misslyckad deltagande @Transactional-metod på skrivtråden markerar inte gruppens
+     * transaktion rollback-only. Skrivtråden rullar själv tillbaka till skrivningens savepoint.
+     */
+    @Bean
+    public static PlatformTransactionManager transactionManager(ObjectProvider<TransactionManagerCustomizers> customizers) {
+        JpaTransactionManager transactionManager = new JpaTransactionManager() {
+            @Override
+            protected void doSetRollbackOnly(DefaultTransactionStatus status) {
+                if (!WRITER_THREAD.get()) {
+                    super.doSetRollbackOnly(status);
+                }
+            }
+        };
+        customizers.ifAvailable(c -> c.customize(transactionManager));
+        return transactionManager;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    <T> T submit(Work<T> work) throws Throwable {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+                throw new IllegalStateException("Skrivning inifrån en read-only-transaktion - den skulle köras på en läs-connection");
+            }
+            // Redan i en skrivtransaktion (skrivtråden själv, eller en större transaktion på skriv-connection)
+            return work.run();
+        }
+        if (!enabled) {
+            return work.run();
+        }
+        if (!running) {
+            throw new IllegalStateException("Skrivtråden är stoppad");
+        }
+
+        Task task = new Task(work, new CompletableFuture<>(), System.nanoTime());
+        // Full kö = anroparen väntar (mottryck), men inte hur länge som helst
+        if (!queue.offer(task, timeoutMs, TimeUnit.MILLISECONDS)) {
+            throw new IllegalStateException("Skrivkön är full (" + queue.size() + " skrivningar)");
+        }
+        // Stoppades skrivtråden medan vi lade in? Då har den kanske redan tömt kön för sista gången
+        if (!running && queue.remove(task)) {
+            throw new IllegalStateException("Skrivtråden är stoppad");
+        }
+
+        try {
+            return (T) task.result().get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        } catch (TimeoutException e) {
+            task.result().cancel(false);    // Ligger den kvar i kön körs den inte
+            throw new IllegalStateException("Skrivningen blev inte klar inom " + timeoutMs + " ms");
+        }
+    }
+
+
+    private void writeLoop() {
+        WRITER_THREAD.set(true);
+        List<Task> batch = new ArrayList<>(maxBatch);
+        try {
+            while (running || !queue.isEmpty()) {
+                try {
+                    Task first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, maxBatch - 1);
+                    batch.removeIf(task -> task.result().isDone());     // Anroparen har gett upp (timeout)
+                    if (batch.isEmpty()) {
+                        continue;
+                    }
+
+                    if (queueWait != null) {
+                        long now = System.nanoTime();
+                        batch.forEach(task -> queueWait.record(now - task.queuedAt(), TimeUnit.NANOSECONDS));
+                    }
+                    commit(batch);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (Throwable e) {
+                    // Får aldrig hända - men ingen anropare ska bli hängande om det gör det
+                    logger.error("Oväntat fel i skrivtråden", e);
+                    batch.forEach(task -> task.result().completeExceptionally(e));
+                } finally {
+                    batch.clear();
+                }
+            }
+        } finally {
+            // Det som lades i kön efter sista varvet körs aldrig - anroparna ska inte vänta på det
+            List<Task> left = new ArrayList<>();
+            queue.drainTo(left);
+            left.forEach(task -> task.result().completeExceptionally(new IllegalStateException("Skrivtråden är stoppad")));
+        }
+    }
+
+
+    // Kör gruppen i en transaktion. En skrivning som har körts körs aldrig om - bara den som misslyckades
+    private void commit(List<Task> batch) throws InterruptedException {
+        List<Task> pending = new ArrayList<>(batch);
+        long backoff = initialBackoffMs;
+        int attempt = 1;
+
+        while (!pending.isEmpty()) {
+            Group group = new Group(pending);
+            try {
+                transaction.executeWithoutResult(status -> runGroup(group, status));
+            } catch (RuntimeException e) {
+                if (group.ran == 0 && group.stoppedAt < 0) {
+                    // BEGIN misslyckades - ingen skrivning har körts än
+                    if (SQLiteBusyRetryAspect.isBusy(e) && attempt < maxAttempts) {
+                        backoff = sleep(backoff);
+                        attempt++;
+                        continue;
+                    }
+                    pending.forEach(task -> task.result().completeExceptionally(e));
+                    return;
+                }
+                // COMMIT misslyckades: inget är sparat, och vi vet inte vilken skrivning som orsakade
+                // felet - alla som har körts får felet (utom de som redan hade ett eget)
+                for (int i = 0; i < group.ran; i++) {
+                    pending.get(i).result().completeExceptionally(group.errors[i] != null ? group.errors[i] : e);
+                }
+                if (group.stoppedAt < 0) {
+                    return;
+                }
+                pending.get(group.stoppedAt).result().completeExceptionally(group.stopError);
+                pending = new ArrayList<>(pending.subList(group.stoppedAt + 1, pending.size()));
+                continue;
+            }
+
+            if (group.stoppedAt < 0) {
+                record(group.complete(pending.size()));
+                return;
+            }
+
+            // Skrivningarna före stoppedAt är committade direkt på connection - nu deras synkroniseringar
+            TransactionSynchronizationUtils.invokeAfterCommit(group.synchronizations);
+            TransactionSynchronizationUtils.invokeAfterCompletion(group.synchronizations, TransactionSynchronization.STATUS_COMMITTED);
+            record(group.complete(group.stoppedAt));
+
+            // Bara den misslyckade skrivningen körs om (SQLITE_BUSY), övriga har inte körts än
+            Task failed = pending.get(group.stoppedAt);
+            List<Task> rest = new ArrayList<>(pending.subList(group.stoppedAt + 1, pending.size()));
+            if (SQLiteBusyRetryAspect.isBusy(group.stopError) && attempt < maxAttempts) {
+                backoff = sleep(backoff);
+                attempt++;
+                rest.add(0, failed);
+            } else {
+                failed.result().completeExceptionally(group.stopError);
+            }
+            pending = rest;
+        }
+    }
+
+
+    // Körs i gruppens transaktion: en savepoint per skrivning
+    private void runGroup(Group group, TransactionStatus status) {
+        Session session = entityManager.unwrap(Session.class);
+        for (int i = 0; i < group.tasks.size(); i++) {
+            List<TransactionSynchronization> before = TransactionSynchronizationManager.getSynchronizations();
+            Savepoint savepoint = session.doReturningWork(Connection::setSavepoint);
+            group.ran = i + 1;
+            try {
+                group.results[i] = group.tasks.get(i).work().run();
+                entityManager.flush();  // Så att ett fel hamnar på rätt skrivning
+                session.doWork(connection -> connection.releaseSavepoint(savepoint));
+            } catch (Throwable e) {
+                // Bara den här skrivningen rullas tillbaka - och det den skulle ha gjort efter commit
+                session.doWork(connection -> connection.rollback(savepoint));
+                restoreSynchronizations(before);
+
+                if (!SQLiteBusyRetryAspect.isBusy(e) && !status.isRollbackOnly()) {
+                    group.errors[i] = e;
+                    continue;
+                }
+                // SQLITE_BUSY, eller Hibernate har markerat transaktionen rollback-only (t.ex. unikt
+                // index) - Hibernate kan inte fortsätta, men skrivningarna före den här finns kvar
+                group.ran = i;
+                group.stoppedAt = i;
+                group.stopError = e;
+                commitOnConnection(session, group, status);
+                return;
+            } finally {
+                // Nästa skrivning läser från databasen, inte entiteter som den här har ändrat med bulk-UPDATE
+                entityManager.clear();
+            }
+        }
+    }
+
+
+    // Committar det som gjorts hittills förbi Hibernate (som bara kan rulla tillbaka nu)
+    // Synkroniseringarna sparas och körs av commit() - Spring ska bara avsluta den tomma transaktionen
+    private void commitOnConnection(Session session, Group group, TransactionStatus status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationUtils.triggerBeforeCommit(false);
+        TransactionSynchronizationUtils.triggerBeforeCompletion();
+        session.doWork(Connection::commit);
+
+        group.synchronizations = synchronizations;
+        restoreSynchronizations(List.of());
+        status.setRollbackOnly();
+    }
+
+
+    // Ta bort synkroniseringar som registrerats efter before
+    private static void restoreSynchronizations(List<TransactionSynchronization> before) {
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationManager.initSynchronization();
+        before.forEach(TransactionSynchronizationManager::registerSynchronization);
+    }
+
+
+    private void record(int committed) {
+        if (batchSize != null && committed > 0) {
+            batchSize.record(committed);
+        }
+    }
+
+
+    private long sleep(long backoff) throws InterruptedException {
+        Thread.sleep(ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1));
+        return Math.min(backoff * 2, maxBackoffMs);
+    }
+}
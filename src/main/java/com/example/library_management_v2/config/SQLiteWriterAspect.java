@@ -0,0 +1,28 @@
+package com.example.library_management_v2.config;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+// Skickar @SingleWriter-metoder till skrivtråden (SQLiteWriter)
+// Ligger utanför både omförsöken (SQLiteBusyRetryAspect) och @Transactional, så att metodens
+// transaktion blir en del av skrivtrådens gemensamma transaktion
+
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 2)
+public class SQLiteWriterAspect {
+
+    @Autowired
+    private SQLiteWriter sqliteWriter;
+
+
+    @Around("@annotation(com.example.library_management_v2.config.SingleWriter)")
+    public Object write(ProceedingJoinPoint joinPoint) throws Throwable {
+        return sqliteWriter.submit(joinPoint::proceed);
+    }
+}
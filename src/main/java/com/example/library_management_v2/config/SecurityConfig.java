@@ -105,8 +105,10 @@ public class SecurityConfig {
                         .requestMatchers("/auth/**").permitAll()        // Inloggning & registrering
                         .requestMatchers("/test").permitAll()           // Test-endpoint
                         .requestMatchers("/test/**").permitAll()        // Alla test-endpoints
+                        .requestMatchers("/actuator/health").permitAll() // Hälsokontroll
 
                         // ADMIN-ONLY områden - endast ADMIN får komma åt
+                        .requestMatchers("/actuator/**").hasRole("ADMIN")   // Metrics (pool, cache m.m.)
                         .requestMatchers("/admin/**").hasRole("ADMIN")      // Admin-panelen
                         .requestMatchers("/users/**").hasRole("ADMIN")      // Användarhantering
                         .requestMatchers("/authors/**").hasRole("ADMIN")    // Författarhantering
@@ -135,7 +137,8 @@ public class SecurityConfig {
 
     @Bean
     public DaoAuthenticationProvider authenticationProvider() {
-        DaoAuthenticationProvider authProvider = new DaoAuthenticationProvider();
+        // Som DaoAuthenticationProvider, men en full hashningskö stoppar inte uppgraderingen av hashen
+        DaoAuthenticationProvider authProvider = new PasswordUpgradingAuthenticationProvider();
 
         // Använd vår UserDetailsService från databasen
         authProvider.setUserDetailsService(userDetailsService);
@@ -143,6 +146,9 @@ public class SecurityConfig {
         // Använd BCrypt för lösenordsjämförelse
         authProvider.setPasswordEncoder(passwordEncoder);
 
+        // Uppgradera svagare/äldre lösenordshashar vid lyckad inloggning (se PasswordConfig)
+        authProvider.setUserDetailsPasswordService(userDetailsService);
+
         return authProvider;
     }
 }
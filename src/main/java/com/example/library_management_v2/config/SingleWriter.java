@@ -0,0 +1,14 @@
+package com.example.library_management_v2.config;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Kör metoden (och dess transaktion) på SQLite-skrivtråden, samlad med andra skrivningar i samma commit
+// Anroparen väntar tills skrivningen är committad - se SQLiteWriter
+
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface SingleWriter {
+}
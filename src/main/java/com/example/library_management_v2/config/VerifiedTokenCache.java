@@ -0,0 +1,106 @@
+package com.example.library_management_v2.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.function.Function;
+
+/**
+ * Cache för redan verifierade JWT-tokens: hela token -> claims.
+ *
+ * Mobilklienter skickar samma access token hundratals gånger under dess 15 minuter.
+ * Med cachen görs base64-avkodning, JSON-parsing och HMAC-kontroll bara första gången.
+ *
+ * Viktigt:
+ * - Nyckeln är HELA token (header.payload.signature). Bara signaturen räcker inte,
+ *   då skulle en förfalskad payload med en giltig signatur kunna träffa cachen.
+ *   Ingen hash av token - den kostar mer per request än den sparar minne (vikten räknar med token).
+ * - Varje post försvinner automatiskt när token går ut (exp).
+ * - Storleken begränsas i ungefärliga bytes (library.security.jwt.verified-cache.max-memory-kb).
+ * - Spärrlistan (UserRevocationList) kontrolleras fortfarande på varje request i filtret.
+ */
+@Component
+public class VerifiedTokenCache {
+
+    // Grov uppskattning av minnet för en post: Caffeine-nod och claims-map, plus token (1 byte per tecken)
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+    private static final int BYTES_PER_CLAIM = 96;
+
+    @Autowired
+    private Environment env;
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    private Cache<String, Claims> cache;
+
+    private boolean enabled;
+
+
+    @PostConstruct
+    public void init() {
+        enabled = env.getProperty("library.security.jwt.verified-cache.enabled", Boolean.class, true);
+        long maxBytes = env.getProperty("library.security.jwt.verified-cache.max-memory-kb", Long.class, 16384L) * 1024;
+
+        cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String token, Claims claims) -> ENTRY_OVERHEAD_BYTES + token.length() + BYTES_PER_CLAIM * claims.size())
+                .expireAfter(new ExpireAtTokenExpiration())
+                .recordStats()
+                .build();
+
+        meterRegistry.ifAvailable(registry -> {
+            CaffeineCacheMetrics.monitor(registry, cache, "verifiedTokens");
+            Gauge.builder("cache.hit.ratio", cache, c -> c.stats().hitRate())
+                    .tag("cache", "verifiedTokens")
+                    .description("Andel requests där token redan var verifierad")
+                    .register(registry);
+        });
+    }
+
+
+    // Hämta verifierade claims, eller verifiera via verifier (JwtUtil) vid miss
+    // Ogiltiga tokens cachas aldrig - verifier kastar exception och inget sparas
+    public Claims get(String token, Function<String, Claims> verifier) {
+        if (!enabled) {
+            return verifier.apply(token);
+        }
+        return cache.get(token, verifier);
+    }
+
+
+    // Posten lever exakt till tokens exp - läsningar förlänger inte livslängden
+    private static class ExpireAtTokenExpiration implements Expiry<String, Claims> {
+
+        @Override
+        public long expireAfterCreate(String key, Claims claims, long currentTime) {
+            Date expiration = claims.getExpiration();
+            if (expiration == null) {
+                return 0;
+            }
+            long millisLeft = expiration.getTime() - System.currentTimeMillis();
+            return Math.max(0, millisLeft) * 1_000_000;
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Claims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(String key, Claims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
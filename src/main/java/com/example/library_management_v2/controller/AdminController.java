@@ -1,15 +1,29 @@
 package com.example.library_management_v2.controller;
 
 
+import com.example.library_management_v2.dto.ImportReportDTO;
+import com.example.library_management_v2.dto.LoanDTO;
+import com.example.library_management_v2.dto.LoanPageDTO;
 import com.example.library_management_v2.entity.User;
 import com.example.library_management_v2.repository.BookRepository;
 import com.example.library_management_v2.repository.LoanRepository;
 import com.example.library_management_v2.repository.UserRepository;
+import com.example.library_management_v2.service.BookSearchIndex;
+import com.example.library_management_v2.service.CatalogueImportService;
+import com.example.library_management_v2.service.OverdueLoanService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.security.Principal;
 import java.util.HashMap;
 import java.util.List;
@@ -29,6 +43,17 @@ public class AdminController {
     @Autowired
     private LoanRepository loanRepository;
 
+    @Autowired
+    private BookSearchIndex bookSearchIndex;
+
+    @Autowired
+    private CatalogueImportService catalogueImportService;
+
+    @Autowired
+    private OverdueLoanService overdueLoanService;
+
+    public static final String CSV = "text/csv";
+
 
     @GetMapping ("/dashboard")
     // Principal är ett Spring Security-objekt som automatiskt injiceras av Spring
@@ -83,4 +108,83 @@ public class AdminController {
         return response;
     }
 
+
+    // Bygger om fulltextindexet för boksökningen (FTS5) från books och authors
+    @PostMapping("/search/rebuild")
+    public Map<String, Object> rebuildSearchIndex(Principal principal) {
+        Map<String, Object> response = new HashMap<>();
+
+        if (!bookSearchIndex.available()) {
+            response.put("message", "Fulltextindex är inte aktiverat - boksökningen använder LIKE");
+            return response;
+        }
+
+        long start = System.currentTimeMillis();
+        int indexed = bookSearchIndex.rebuild();
+
+        response.put("message", "Fulltextindex ombyggt");
+        response.put("indexed_books", indexed);
+        response.put("duration_ms", System.currentTimeMillis() - start);
+        response.put("admin_user", principal.getName());
+        return response;
+    }
+
+
+    // Bulk-import av författare från CSV (text/csv) eller NDJSON (application/x-ndjson)
+    // Filen läses som en ström rad för rad - hela filen behöver aldrig ligga i minnet
+    @PostMapping(value = "/import/authors", consumes = {CSV, BookController.NDJSON})
+    public ImportReportDTO importAuthors(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                         InputStream body) throws IOException {
+        return catalogueImportService.importAuthors(body, importFormat(contentType));
+    }
+
+
+    // Bulk-import av böcker - importera författarna först så att böckerna kan kopplas till dem
+    @PostMapping(value = "/import/books", consumes = {CSV, BookController.NDJSON})
+    public ImportReportDTO importBooks(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                       InputStream body) throws IOException {
+        return catalogueImportService.importBooks(body, importFormat(contentType));
+    }
+
+
+    /**
+     * Försenade lån sida för sida (keyset-paginering sorterad på lån-id)
+     * Listan fylls på av den schemalagda genomsökningen (library.overdue.scan-interval-ms)
+     * GET /admin/loans/overdue?after={X-Next-Cursor}&size=50
+     */
+    @GetMapping("/loans/overdue")
+    public ResponseEntity<List<LoanDTO>> getOverdueLoans(
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "" + OverdueLoanService.DEFAULT_PAGE_SIZE) int size) {
+        LoanPageDTO page = overdueLoanService.getOverdueLoans(after, size);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header("X-Next-Cursor", String.valueOf(page.getNextCursor()));
+        }
+        return response.body(page.getItems());
+    }
+
+
+    // Kör genomsökningen efter försenade lån direkt istället för att vänta på schemat
+    @PostMapping("/loans/overdue/scan")
+    public Map<String, Object> scanOverdueLoans(Principal principal) {
+        Map<String, Object> response = new HashMap<>();
+
+        long start = System.currentTimeMillis();
+        int found = overdueLoanService.scan();
+
+        response.put("message", "Genomsökning av försenade lån klar");
+        response.put("new_overdue_loans", found);
+        response.put("duration_ms", System.currentTimeMillis() - start);
+        response.put("admin_user", principal.getName());
+        return response;
+    }
+
+
+    private static CatalogueImportService.Format importFormat(String contentType) {
+        return MediaType.parseMediaType(contentType).isCompatibleWith(MediaType.parseMediaType(BookController.NDJSON))
+                ? CatalogueImportService.Format.NDJSON
+                : CatalogueImportService.Format.CSV;
+    }
 }
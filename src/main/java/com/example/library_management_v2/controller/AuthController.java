@@ -2,12 +2,16 @@ package com.example.library_management_v2.controller;
 
 
 import com.example.library_management_v2.config.JwtUtil;
+import com.example.library_management_v2.config.SQLiteWriter;
 import com.example.library_management_v2.dto.*;
 import com.example.library_management_v2.entity.RefreshToken;
 import com.example.library_management_v2.entity.User;
 import com.example.library_management_v2.exception.DuplicateUserException;
+import com.example.library_management_v2.exception.PasswordHashingBusyException;
 import com.example.library_management_v2.repository.UserRepository;
 import com.example.library_management_v2.service.RefreshTokenService;
+import com.example.library_management_v2.service.UserDetailsCache;
+import com.example.library_management_v2.service.UserRevocationList;
 import com.example.library_management_v2.service.UserService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -58,6 +62,15 @@ public class AuthController {
     @Autowired
     private RefreshTokenService refreshTokenService;
 
+    @Autowired
+    private UserDetailsCache userDetailsCache;
+
+    @Autowired
+    private UserRevocationList revocationList;
+
+    @Autowired
+    private SQLiteWriter sqliteWriter;
+
 
     // Inloggnings-endpoint som returnerar JWT access token + refresh token
     // POST /auth/login
@@ -160,6 +173,10 @@ public class AuthController {
             error.put("error", "Felaktigt användarnamn eller lösenord");
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(error);
 
+        } catch (PasswordHashingBusyException e) {
+            // 429 + Retry-After via GlobalExceptionHandler
+            throw e;
+
         } catch (Exception e) {
             Map<String, String> error = new HashMap<>();
             error.put("error", "Inloggning misslyckades: " + e.getMessage());
@@ -282,23 +299,26 @@ public class AuthController {
                 throw new DuplicateUserException("En användare med denna e-postadress finns redan");
             }
 
-            // Skapa ny användare
-            User user = new User();
-            user.setFirstName(createUserDTO.getFirstName());
-            user.setLastName(createUserDTO.getLastName());
-            user.setEmail(createUserDTO.getEmail());
-
-            // Kryptera lösenordet innan vi sparar det (VIKTIGT!)
-            user.setPassword(passwordEncoder.encode(createUserDTO.getPassword()));
-
-            // Sätt standardvärden
-            // Använd String-format för registrationDate (på grund av SQLite-kompatibilitet)
-            user.setRegistrationDate(LocalDate.now().toString());
-            user.setRole("USER");  // Nya användare får USER-roll som standard
-            user.setEnabled(true);
-
-            // Spara användaren
-            User savedUser = userRepository.save(user);
+            // Kryptera lösenordet innan vi sparar det (VIKTIGT!) - BCrypt körs här, inte på skrivtråden
+            String passwordHash = passwordEncoder.encode(createUserDTO.getPassword());
+
+            // Spara användaren - bara själva INSERT:en går via skrivtråden
+            // Entiteten skapas inuti skrivningen, så att ett omförsök alltid börjar med en ny entitet
+            User savedUser = sqliteWriter.execute(() -> {
+                // Skapa ny användare
+                User user = new User();
+                user.setFirstName(createUserDTO.getFirstName());
+                user.setLastName(createUserDTO.getLastName());
+                user.setEmail(createUserDTO.getEmail());
+                user.setPassword(passwordHash);
+
+                // Sätt standardvärden
+                // Använd String-format för registrationDate (på grund av SQLite-kompatibilitet)
+                user.setRegistrationDate(LocalDate.now().toString());
+                user.setRole("USER");  // Nya användare får USER-roll som standard
+                user.setEnabled(true);
+                return userRepository.save(user);
+            });
 
             // Skapa framgångsrikt svar
             Map<String, Object> response = new HashMap<>();
@@ -313,6 +333,9 @@ public class AuthController {
             error.put("error", e.getMessage());
             return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
 
+        } catch (PasswordHashingBusyException e) {
+            throw e;
+
         } catch (Exception e) {
             Map<String, String> error = new HashMap<>();
             error.put("error", "Registrering misslyckades: " + e.getMessage());
@@ -381,7 +404,11 @@ public class AuthController {
             if (request != null && request.containsKey("refreshToken")) {
                 String refreshToken = request.get("refreshToken");
                 refreshTokenService.findByToken(refreshToken)
-                        .ifPresent(token -> refreshTokenService.deleteByUserId(token.getUser().getId()));
+                        .ifPresent(token -> {
+                            userDetailsCache.evict(token.getUser().getEmail());
+                            revocationList.revoke(token.getUser().getEmail());
+                            refreshTokenService.deleteByUserId(token.getUser().getId());
+                        });
             }
             // Alternativt, om användaren är autentiserad, ta bort alla deras refresh tokens
             else if (authentication != null && authentication.isAuthenticated()) {
@@ -392,6 +419,13 @@ public class AuthController {
                 }
             }
 
+            // Ta bort användaren ur UserDetails-cachen så att nästa request läser från databasen
+            // och spärra de access tokens som redan är utfärdade
+            if (authentication != null) {
+                userDetailsCache.evict(authentication.getName());
+                revocationList.revoke(authentication.getName());
+            }
+
             Map<String, String> response = new HashMap<>();
             response.put("message", "Utloggning lyckades. Access token och refresh token har invaliderats.");
             return ResponseEntity.ok(response);
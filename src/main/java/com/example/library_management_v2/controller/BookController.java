@@ -1,12 +1,18 @@
 package com.example.library_management_v2.controller;
 
 import com.example.library_management_v2.dto.BookDTO;
+import com.example.library_management_v2.dto.BookPageDTO;
 import com.example.library_management_v2.dto.BookWithDetailsDTO;
 import com.example.library_management_v2.service.BookService;
+import com.example.library_management_v2.service.CatalogueVersions;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 
+import java.io.IOException;
 import java.util.List;
 
 
@@ -17,26 +23,74 @@ public class BookController {
     @Autowired
     private BookService bookService;
 
+    @Autowired
+    private CatalogueVersions catalogueVersions;
+
+    public static final String NDJSON = "application/x-ndjson";
+
     /**
-     * Hämtar alla böcker
-     * Returnera en lista med alla böcker som BookWithDetailsDTO
+     * Hämtar böcker sida för sida (keyset-paginering sorterad på id)
+     * after Sista id från föregående sida (frivillig, utelämnas för första sidan)
+     * size Antal böcker per sida (standard 50, max 500)
+     * Returnerar listan med böcker, och headern X-Next-Cursor om det finns fler sidor:
+     * GET /books?after={X-Next-Cursor}&size=50
+     * Med If-None-Match och oförändrad katalog blir svaret 304 utan body (se ConditionalGet)
      */
     @GetMapping
-    public List<BookWithDetailsDTO> getAllBooks() {
-        return bookService.getAllBooks();
+    public ResponseEntity<List<BookWithDetailsDTO>> getAllBooks(
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "" + BookService.DEFAULT_PAGE_SIZE) int size,
+            ServletWebRequest request) {
+        if (ConditionalGet.notModified(request, catalogueVersions.booksETag("json"))) {
+            return null;
+        }
+
+        BookPageDTO page = bookService.getBooksPage(after, size);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header("X-Next-Cursor", String.valueOf(page.getNextCursor()));
+        }
+        return response.body(page.getItems());
+    }
+
+    /**
+     * Strömmar HELA katalogen som NDJSON (en bok per rad)
+     * Används med "Accept: application/x-ndjson" - raderna skrivs ut medan de läses från databasen
+     */
+    @GetMapping(produces = NDJSON)
+    public void streamAllBooks(HttpServletResponse response, ServletWebRequest request) throws IOException {
+        if (ConditionalGet.notModified(request, catalogueVersions.booksETag("ndjson"))) {
+            return;
+        }
+
+        response.setContentType(NDJSON);
+        response.setCharacterEncoding("UTF-8");
+        bookService.streamAllBooks(response.getOutputStream());
     }
 
     /**
      * Söker böcker baserat på titel eller författare
      * title Titeln att söka efter (frivillig)
      * author Författarens efternamn att söka efter (frivillig)
-     * Vi får en lista med matchande böcker
+     * match any = titel ELLER författare (standard), all = båda måste matcha
+     * limit/offset Vilken del av träfflistan som ska hämtas (standard 50 första, max 500)
+     * Vi får en lista med matchande böcker, bästa träff först
      */
     @GetMapping("/search")
     public List<BookWithDetailsDTO> searchBooks(
             @RequestParam(required = false) String title,
-            @RequestParam(required = false) String author) {
-        return bookService.searchBooks(title, author);
+            @RequestParam(required = false) String author,
+            @RequestParam(defaultValue = "any") String match,
+            @RequestParam(defaultValue = "" + BookService.DEFAULT_PAGE_SIZE) int limit,
+            @RequestParam(defaultValue = "0") int offset,
+            ServletWebRequest request) {
+        if (ConditionalGet.notModified(request, catalogueVersions.booksETag("json"))) {
+            return null;
+        }
+
+        // match=all: både titel och författare måste matcha, annars räcker något av dem
+        return bookService.searchBooks(title, author, "all".equalsIgnoreCase(match), limit, offset);
     }
 
     /**
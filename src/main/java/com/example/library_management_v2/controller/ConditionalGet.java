@@ -0,0 +1,24 @@
+package com.example.library_management_v2.controller;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.context.request.ServletWebRequest;
+
+// Conditional GET för list-endpoints: ETag från CatalogueVersions jämförs med If-None-Match
+// innan något hämtas. Stämmer den svarar vi 304 Not Modified utan body.
+// "private, no-cache" = klienten får spara svaret men måste fråga (med If-None-Match) varje gång
+
+final class ConditionalGet {
+
+    private ConditionalGet() {
+    }
+
+    // true = 304 är redan satt, controllern ska returnera utan body
+    static boolean notModified(ServletWebRequest request, String etag) {
+        HttpServletResponse response = request.getResponse();
+        if (response != null) {
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+        }
+        return request.checkNotModified(etag);
+    }
+}
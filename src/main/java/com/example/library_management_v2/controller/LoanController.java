@@ -1,9 +1,13 @@
 package com.example.library_management_v2.controller;
 
 //  Vi skapar en controller för att hantera lån-relaterade endpoints:
+import com.example.library_management_v2.dto.CreateLoanBatchDTO;
 import com.example.library_management_v2.dto.CreateLoanDTO;
+import com.example.library_management_v2.dto.LoanBatchResultDTO;
 import com.example.library_management_v2.dto.LoanDTO;
+import com.example.library_management_v2.dto.ReturnLoanBatchDTO;
 import com.example.library_management_v2.exception.UserNotFoundException;
+import com.example.library_management_v2.service.CatalogueVersions;
 import com.example.library_management_v2.service.LoanService;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.validation.Valid;
@@ -11,6 +15,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import java.util.List;
 
@@ -25,10 +30,18 @@ public class LoanController {
     @Autowired
     private LoanService loanService;
 
+    @Autowired
+    private CatalogueVersions catalogueVersions;
+
 
     // Hämta alla lån för en specifik användare
+    // Med If-None-Match och oförändrade lån blir svaret 304 utan body (se ConditionalGet)
     @GetMapping("/{userId}/loans")
-    public ResponseEntity<List<LoanDTO>> getUserLoans(@PathVariable Long userId) {
+    public ResponseEntity<List<LoanDTO>> getUserLoans(@PathVariable Long userId, ServletWebRequest request) {
+        if (ConditionalGet.notModified(request, catalogueVersions.loansETag())) {
+            return null;
+        }
+
         try {
             List<LoanDTO> loans = loanService.getUserLoans(userId);
             return ResponseEntity.ok(loans);
@@ -47,6 +60,19 @@ public class LoanController {
         return loanService.createLoan(createLoanDTO);
     }
 
+    // Låna flera böcker på en gång (självbetjäningsautomat) - ett resultat per bok
+    // 200 även om vissa böcker inte kunde lånas, se success/error per post
+    @PostMapping("/loans/batch")
+    public List<LoanBatchResultDTO> createLoans(@Valid @RequestBody CreateLoanBatchDTO request) {
+        return loanService.createLoans(request);
+    }
+
+    // Lämna tillbaka flera lån på en gång - ett resultat per lån
+    @PutMapping("/loans/return/batch")
+    public List<LoanBatchResultDTO> returnBooks(@Valid @RequestBody ReturnLoanBatchDTO request) {
+        return loanService.returnBooks(request);
+    }
+
     // Att lämna tillbaka en book
     @PutMapping("/loans/{id}/return")
     public ResponseEntity<LoanDTO> returnBook(@PathVariable("id") Long loanId) {
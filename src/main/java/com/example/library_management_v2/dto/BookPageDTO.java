@@ -0,0 +1,37 @@
+package com.example.library_management_v2.dto;
+
+import java.util.List;
+
+// En sida med böcker från keyset-pagineringen
+// nextCursor = id att skicka som "after" för nästa sida (null när det inte finns fler)
+
+public class BookPageDTO {
+
+    private List<BookWithDetailsDTO> items;
+    private Long nextCursor;
+
+    // Konstruktor
+    public BookPageDTO() {}
+
+    public BookPageDTO(List<BookWithDetailsDTO> items, Long nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    // Getters och setters
+    public List<BookWithDetailsDTO> getItems() {
+        return items;
+    }
+
+    public void setItems(List<BookWithDetailsDTO> items) {
+        this.items = items;
+    }
+
+    public Long getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(Long nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
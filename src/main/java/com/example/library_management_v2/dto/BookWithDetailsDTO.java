@@ -15,6 +15,18 @@ public class BookWithDetailsDTO {
     // Konstruktor
     public BookWithDetailsDTO() {}
 
+    // Används av projektionsfrågorna i BookRepository (SELECT new ...BookWithDetailsDTO(...))
+    public BookWithDetailsDTO(Long id, String title, Integer publicationYear, Integer availableCopies,
+                              Integer totalCopies, String authorFirstName, String authorLastName) {
+        this.id = id;
+        this.title = title;
+        this.publicationYear = publicationYear;
+        this.availableCopies = availableCopies;
+        this.totalCopies = totalCopies;
+        this.authorFirstName = authorFirstName;
+        this.authorLastName = authorLastName;
+    }
+
     // Getters och setters
     public Long getId() {
         return id;
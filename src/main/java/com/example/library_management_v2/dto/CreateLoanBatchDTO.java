@@ -0,0 +1,37 @@
+package com.example.library_management_v2.dto;
+
+// En DTO för att låna flera böcker på en gång (t.ex. en hög böcker i självbetjäningsautomaten)
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+
+import java.util.List;
+
+public class CreateLoanBatchDTO {
+
+    @NotNull(message = "Användar-ID måste anges")
+    private Long userId;
+
+    @NotEmpty(message = "Minst ett bok-ID måste anges")
+    private List<@NotNull(message = "Bok-ID får inte vara tomt") Long> bookIds;
+
+    // Tom konstruktor
+    public CreateLoanBatchDTO() {}
+
+    // Getters och setters
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public List<Long> getBookIds() {
+        return bookIds;
+    }
+
+    public void setBookIds(List<Long> bookIds) {
+        this.bookIds = bookIds;
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.library_management_v2.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Resultatet av en bulk-import (POST /admin/import/authors eller /admin/import/books)
+// rejectedRows innehåller bara de första avvisade raderna (library.import.max-rejected-details)
+
+public class ImportReportDTO {
+
+    private long imported;
+    private long rejected;
+    private long durationMs;
+    private long rowsPerSecond;
+    private List<RejectedRow> rejectedRows = new ArrayList<>();
+
+    // En avvisad rad: radnummer i filen (1 = första raden) och orsak
+    public static class RejectedRow {
+
+        private long line;
+        private String error;
+
+        public RejectedRow() {}
+
+        public RejectedRow(long line, String error) {
+            this.line = line;
+            this.error = error;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public void setLine(long line) {
+            this.line = line;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public void setError(String error) {
+            this.error = error;
+        }
+    }
+
+    // Tom konstruktor
+    public ImportReportDTO() {}
+
+    // Getters och setters
+    public long getImported() {
+        return imported;
+    }
+
+    public void setImported(long imported) {
+        this.imported = imported;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public void setRejected(long rejected) {
+        this.rejected = rejected;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public void setDurationMs(long durationMs) {
+        this.durationMs = durationMs;
+    }
+
+    public long getRowsPerSecond() {
+        return rowsPerSecond;
+    }
+
+    public void setRowsPerSecond(long rowsPerSecond) {
+        this.rowsPerSecond = rowsPerSecond;
+    }
+
+    public List<RejectedRow> getRejectedRows() {
+        return rejectedRows;
+    }
+
+    public void setRejectedRows(List<RejectedRow> rejectedRows) {
+        this.rejectedRows = rejectedRows;
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.library_management_v2.dto;
+
+// Resultatet för en post i ett batch-anrop (lån eller återlämning)
+// id = bok-ID:t (lån) eller lån-ID:t (återlämning) som skickades in
+// Antingen finns loan (lyckades) eller error (misslyckades)
+
+public class LoanBatchResultDTO {
+
+    private Long id;
+    private boolean success;
+    private LoanDTO loan;
+    private String error;
+
+    // Tom konstruktor
+    public LoanBatchResultDTO() {}
+
+    public static LoanBatchResultDTO succeeded(Long id, LoanDTO loan) {
+        LoanBatchResultDTO result = new LoanBatchResultDTO();
+        result.id = id;
+        result.success = true;
+        result.loan = loan;
+        return result;
+    }
+
+    public static LoanBatchResultDTO failed(Long id, String error) {
+        LoanBatchResultDTO result = new LoanBatchResultDTO();
+        result.id = id;
+        result.error = error;
+        return result;
+    }
+
+    // Getters och setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+
+    public LoanDTO getLoan() {
+        return loan;
+    }
+
+    public void setLoan(LoanDTO loan) {
+        this.loan = loan;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
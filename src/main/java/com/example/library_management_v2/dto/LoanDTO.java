@@ -25,6 +25,26 @@ public class LoanDTO {
     public LoanDTO() {
     }
 
+    // Används av projektionsfrågorna i LoanRepository (SELECT new ...LoanDTO(...))
+    // active, overdue och extended räknas fram här på samma sätt som i Loan-entiteten.
+    // Overdue jämförs inte i SQL eftersom datumen i SQLite-filen finns i två format
+    // (text från äldre rader, epoch-millisekunder från Hibernate) som inte går att jämföra
+    public LoanDTO(Long id, Long userId, Long bookId, String bookTitle, String authorName,
+                   LocalDate borrowedDate, LocalDate dueDate, LocalDate returnedDate) {
+        this.id = id;
+        this.userId = userId;
+        this.bookId = bookId;
+        this.bookTitle = bookTitle;
+        this.authorName = authorName;
+        this.borrowedDate = borrowedDate;
+        this.dueDate = dueDate;
+        this.returnedDate = returnedDate;
+        this.active = returnedDate == null;
+        this.overdue = active && dueDate != null && LocalDate.now().isAfter(dueDate);
+        this.extended = borrowedDate != null && dueDate != null &&
+                dueDate.isAfter(borrowedDate.plusDays(14));
+    }
+
 
     public Long getId() {
         return id;
@@ -0,0 +1,37 @@
+package com.example.library_management_v2.dto;
+
+import java.util.List;
+
+// En sida med lån (keyset-paginering på lån-id)
+// nextCursor = id att skicka som "after" för nästa sida (null när det inte finns fler)
+
+public class LoanPageDTO {
+
+    private List<LoanDTO> items;
+    private Long nextCursor;
+
+    // Konstruktor
+    public LoanPageDTO() {}
+
+    public LoanPageDTO(List<LoanDTO> items, Long nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    // Getters och setters
+    public List<LoanDTO> getItems() {
+        return items;
+    }
+
+    public void setItems(List<LoanDTO> items) {
+        this.items = items;
+    }
+
+    public Long getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(Long nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.library_management_v2.dto;
+
+// En DTO för att lämna tillbaka flera lån på en gång
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+
+import java.util.List;
+
+public class ReturnLoanBatchDTO {
+
+    @NotEmpty(message = "Minst ett lån-ID måste anges")
+    private List<@NotNull(message = "Lån-ID får inte vara tomt") Long> loanIds;
+
+    // Tom konstruktor
+    public ReturnLoanBatchDTO() {}
+
+    // Getters och setters
+    public List<Long> getLoanIds() {
+        return loanIds;
+    }
+
+    public void setLoanIds(List<Long> loanIds) {
+        this.loanIds = loanIds;
+    }
+}
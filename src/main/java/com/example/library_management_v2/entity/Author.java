@@ -4,7 +4,7 @@ package com.example.library_management_v2.entity;
 import jakarta.persistence.*;
 
 @Entity
-@Table(name = "authors")
+@Table(name = "authors", indexes = @Index(name = "idx_authors_last_name", columnList = "last_name"))
 public class Author {
 
     @Id
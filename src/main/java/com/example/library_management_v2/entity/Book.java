@@ -3,7 +3,8 @@ package com.example.library_management_v2.entity;
 import jakarta.persistence.*;
 
 @Entity
-@Table(name = "books") // Viktigt att tabellnamnet matchar exakt med databasen
+@Table(name = "books", // Viktigt att tabellnamnet matchar exakt med databasen
+        indexes = @Index(name = "idx_books_author_id", columnList = "author_id"))
 public class Book {
 
     @Id
@@ -27,6 +28,12 @@ public class Book {
     @JoinColumn(name = "author_id")
     private Author author;
 
+    // Optimistisk låsning: en UPDATE som bygger på en gammal version av boken misslyckas
+    // istället för att skriva över en samtidig ändring (t.ex. ett lån som minskat availableCopies)
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
+
     // Tom konstruktor som krävs av JPA
     public Book() {
 
@@ -80,4 +87,12 @@ public class Book {
     public void setAuthor(Author author) {
         this.author = author;
     }
-}
\ No newline at end of file
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+}
@@ -5,7 +5,13 @@ import java.time.LocalDate;
 
 // Vi skapar en loan-entitet som liknar vår databas
 @Entity
-@Table(name = "loans")
+@Table(name = "loans", indexes = {
+        // Aktiva lån sorterade på förfallodatum - OverdueLoanService hittar försenade lån utan att läsa hela tabellen
+        // (mot SQLite skapas indexen av SQLiteMigrations, ddl-auto=none)
+        @Index(name = "idx_loans_returned_due", columnList = "returned_date, due_date"),
+        @Index(name = "idx_loans_user_id", columnList = "user_id"),
+        @Index(name = "idx_loans_book_id", columnList = "book_id")
+})
 public class Loan {
 
     @Id
@@ -0,0 +1,40 @@
+package com.example.library_management_v2.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDate;
+
+// Ett lån som OverdueLoanService har hittat som försenat (tabellen overdue_loans)
+// Raden tas bort när lånet återlämnas eller förlängs så att det inte längre är försenat
+@Entity
+@Table(name = "overdue_loans")
+public class OverdueLoan {
+
+    @Id
+    @Column(name = "loan_id")
+    private Long loanId;
+
+    // Dagen då genomsökningen upptäckte att lånet var försenat
+    @Column(name = "detected_date", nullable = false)
+    private LocalDate detectedDate;
+
+
+    // Tom konstruktor som krävs av JPA
+    public OverdueLoan() {}
+
+    // Getters och setters
+    public Long getLoanId() {
+        return loanId;
+    }
+
+    public void setLoanId(Long loanId) {
+        this.loanId = loanId;
+    }
+
+    public LocalDate getDetectedDate() {
+        return detectedDate;
+    }
+
+    public void setDetectedDate(LocalDate detectedDate) {
+        this.detectedDate = detectedDate;
+    }
+}
@@ -8,7 +8,10 @@ import java.time.LocalDateTime;
 // De har längre livslängd än access tokens men sparas i databasen för säkerhet.
 
 @Entity
-@Table(name = "refresh_tokens")
+@Table(name = "refresh_tokens", indexes = {
+        @Index(name = "idx_refresh_tokens_user_id", columnList = "user_id"),
+        @Index(name = "idx_refresh_tokens_expiry", columnList = "expiry_date")
+})
 public class RefreshToken {
 
 
@@ -12,6 +12,7 @@ import jakarta.persistence.PrePersist;
 
 @Entity
 @Table(name = "users")
+@EntityListeners(UserCacheEvictionListener.class) // Rensar UserDetailsCache vid ändringar
 public class User {
 
     @Id
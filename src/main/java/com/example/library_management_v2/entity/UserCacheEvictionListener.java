@@ -0,0 +1,56 @@
+package com.example.library_management_v2.entity;
+
+import com.example.library_management_v2.service.UserDetailsCache;
+import com.example.library_management_v2.service.UserRevocationList;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+// JPA-lyssnare som rensar UserDetailsCache när en användare ändras eller tas bort
+// Då slår en ändrad roll eller enabled-flagga igenom direkt på nästa request,
+// oavsett vilken service som gjorde ändringen.
+// Avstängda användare läggs också på spärrlistan så att deras access tokens slutar gälla.
+
+public class UserCacheEvictionListener {
+
+    // ObjectProvider eftersom lyssnaren skapas av Hibernate medan EntityManagerFactory byggs
+    @Autowired
+    private ObjectProvider<UserDetailsCache> userDetailsCache;
+
+    @Autowired
+    private ObjectProvider<UserRevocationList> revocationList;
+
+
+    @PostRemove
+    public void userRemoved(User user) {
+        revocationList.ifAvailable(list -> list.revoke(user.getEmail()));
+        evictUser(user);
+    }
+
+
+    @PostUpdate
+    public void evictUser(User user) {
+        String email = user.getEmail();
+
+        if (!Boolean.TRUE.equals(user.getEnabled())) {
+            revocationList.ifAvailable(list -> list.revoke(email));
+        }
+
+        userDetailsCache.ifAvailable(cache -> {
+            cache.evict(email);
+
+            // Rensa igen efter commit, så att en parallell request inte hinner cacha den gamla raden
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        cache.evict(email);
+                    }
+                });
+            }
+        });
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.library_management_v2.exception;
+
+// Kastas när kön till lösenordshashningen är full - blir 429 Too Many Requests med Retry-After
+public class PasswordHashingBusyException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public PasswordHashingBusyException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
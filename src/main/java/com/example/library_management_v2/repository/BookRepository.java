@@ -1,17 +1,141 @@
 package com.example.library_management_v2.repository;
 
+import com.example.library_management_v2.dto.BookWithDetailsDTO;
 import com.example.library_management_v2.entity.Book;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface BookRepository extends JpaRepository<Book, Long> {
 
-    // Söker böcker där titeln innehåller en viss sträng (case-insensitive)
-    List<Book> findByTitleContainingIgnoreCase(String title);
+    // Alla listfrågor nedan hämtar författaren i samma SELECT (@EntityGraph = LEFT JOIN)
+    // Utan det kör Hibernate en extra SELECT per författare eftersom Book.author är EAGER
 
-    // Söker böcker av en specifik författare (används i sökning)
-    List<Book> findByAuthorLastNameContainingIgnoreCase(String authorLastName);
+    // Alla böcker tillsammans med sina författare
+    @Override
+    @EntityGraph(attributePaths = "author")
+    List<Book> findAll();
+
+    // Keyset-paginering: nästa sida efter ett visst id, sorterat på primärnyckeln (stabil ordning)
+    // Författaren hämtas i samma fråga så att sidan inte ger en extra fråga per bok
+    @EntityGraph(attributePaths = "author")
+    List<Book> findByIdGreaterThanOrderByIdAsc(Long afterId, Limit limit);
+
+    // Flera böcker på en gång (batch-lån) - en SELECT oavsett antal
+    @EntityGraph(attributePaths = "author")
+    List<Book> findByIdIn(Collection<Long> ids);
+
+    // Hela katalogen som en ström direkt från JDBC-cursorn - måste läsas inom en transaktion
+    // och stängas efteråt. Read-only: Hibernate sparar inga snapshots för dirty checking
+    @Query("SELECT b FROM Book b LEFT JOIN FETCH b.author ORDER BY b.id")
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<Book> streamAllWithAuthor();
+
+    // Projektioner för läs-endpoints: DTO:n byggs direkt från SQL-raden
+    // Inga entiteter, inga snapshots för dirty checking och ingen persistence context att fylla
+    String BOOK_DETAILS = "SELECT new com.example.library_management_v2.dto.BookWithDetailsDTO("
+            + "b.id, b.title, b.publicationYear, b.availableCopies, b.totalCopies, a.firstName, a.lastName) "
+            + "FROM Book b LEFT JOIN b.author a ";
+
+    // Rangordning för sökningen: exakt träff (0) före prefix (1) före delsträng (2), sedan id
+    // :title/:author är söktexten i gemener, :titleLike/:authorLike samma text där \, % och _ escapats med \
+    String SEARCH_RANK = "ORDER BY CASE "
+            + "WHEN LOWER(b.title) = :title OR LOWER(a.lastName) = :author THEN 0 "
+            + "WHEN LOWER(b.title) LIKE CONCAT(:titleLike, '%') ESCAPE '\\' "
+            + "OR LOWER(a.lastName) LIKE CONCAT(:authorLike, '%') ESCAPE '\\' THEN 1 "
+            + "ELSE 2 END, b.id";
+
+    String TITLE_MATCHES = "LOWER(b.title) LIKE CONCAT('%', :titleLike, '%') ESCAPE '\\'";
+    String AUTHOR_MATCHES = "LOWER(a.lastName) LIKE CONCAT('%', :authorLike, '%') ESCAPE '\\'";
+
+    // Sökning på titel ELLER författarens efternamn (null = sök inte på det fältet)
+    // Båda villkoren i samma fråga - en bok som matchar båda kommer bara med en gång
+    // page anger LIMIT/OFFSET (se OffsetPageRequest)
+    @Query(BOOK_DETAILS
+            + "WHERE (:titleLike IS NOT NULL AND " + TITLE_MATCHES + ") "
+            + "OR (:authorLike IS NOT NULL AND " + AUTHOR_MATCHES + ") "
+            + SEARCH_RANK)
+    List<BookWithDetailsDTO> searchBookDetails(@Param("title") String title,
+                                               @Param("titleLike") String titleLike,
+                                               @Param("author") String author,
+                                               @Param("authorLike") String authorLike,
+                                               Pageable page);
+
+    // Samma sökning men boken måste matcha BÅDE titel och författare (null = inget krav på det fältet)
+    @Query(BOOK_DETAILS
+            + "WHERE (:titleLike IS NULL OR " + TITLE_MATCHES + ") "
+            + "AND (:authorLike IS NULL OR " + AUTHOR_MATCHES + ") "
+            + SEARCH_RANK)
+    List<BookWithDetailsDTO> searchBookDetailsMatchingAll(@Param("title") String title,
+                                                          @Param("titleLike") String titleLike,
+                                                          @Param("author") String author,
+                                                          @Param("authorLike") String authorLike,
+                                                          Pageable page);
+
+    // Alla böcker som DTO
+    @Query(BOOK_DETAILS + "ORDER BY b.id")
+    List<BookWithDetailsDTO> findAllBookDetails();
+
+    // En del av katalogen som DTO (sökning utan sökord)
+    @Query(BOOK_DETAILS + "ORDER BY b.id")
+    List<BookWithDetailsDTO> findAllBookDetails(Pageable page);
+
+    // Böcker med givna id:n som DTO (ordningen bestäms av den som anropar)
+    @Query(BOOK_DETAILS + "WHERE b.id IN :ids")
+    List<BookWithDetailsDTO> findBookDetailsByIds(@Param("ids") Collection<Long> ids);
+
+    // Reservera ett exemplar: räknar ner availableCopies i en enda UPDATE, men bara om det finns något kvar
+    // Villkoret kontrolleras av databasen i samma sats - två samtidiga lån kan aldrig båda ta sista exemplaret
+    // Returnerar 1 om ett exemplar reserverades, 0 om boken saknas eller inte har några lediga exemplar
+    // version räknas upp så att en samtidig entity-uppdatering av boken får OptimisticLockException
+    // Persistence context töms efteråt - annars ser resten av transaktionen boken med gamla värden och version
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Transactional
+    @Query("UPDATE Book b SET b.availableCopies = b.availableCopies - 1, b.version = b.version + 1 "
+            + "WHERE b.id = :id AND b.availableCopies > 0")
+    int reserveCopy(@Param("id") Long id);
+
+    // Lämna tillbaka ett exemplar (motsvarigheten till reserveCopy)
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Transactional
+    @Query("UPDATE Book b SET b.availableCopies = b.availableCopies + 1, b.version = b.version + 1 "
+            + "WHERE b.id = :id")
+    int releaseCopy(@Param("id") Long id);
+
+    // Lämna tillbaka count exemplar av var och en av böckerna i en enda UPDATE (batch-återlämning)
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Transactional
+    @Query("UPDATE Book b SET b.availableCopies = b.availableCopies + :count, b.version = b.version + 1 "
+            + "WHERE b.id IN :ids")
+    int releaseCopies(@Param("ids") Collection<Long> ids, @Param("count") int count);
+
+    // Det CatalogueSearchEngine indexerar: id, titel och författarens efternamn
+    interface SearchableBook {
+        Long getId();
+        String getTitle();
+        String getAuthorLastName();
+    }
+
+    // Hela katalogen för att bygga sökindexet i minnet - måste läsas inom en transaktion
+    @Query("SELECT b.id AS id, b.title AS title, a.lastName AS authorLastName "
+            + "FROM Book b LEFT JOIN b.author a ORDER BY b.id")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    Stream<SearchableBook> streamSearchableBooks();
 }
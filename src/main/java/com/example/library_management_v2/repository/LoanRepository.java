@@ -1,19 +1,75 @@
 package com.example.library_management_v2.repository;
 
+import com.example.library_management_v2.dto.LoanDTO;
 import com.example.library_management_v2.entity.Loan;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface LoanRepository extends JpaRepository<Loan, Long> {
 
+    // Användare, bok och bokens författare hämtas i samma SELECT som lånen
+    // Utan @EntityGraph blir det en extra SELECT per användare, bok och författare (N+1)
+
     // Hämta alla lån för en specifik användare
+    @EntityGraph(attributePaths = {"user", "book", "book.author"})
     List<Loan> findByUserId(Long userId);
 
     // Hämta aktiva lån för en specifik användare
+    @EntityGraph(attributePaths = {"user", "book", "book.author"})
     List<Loan> findByUserIdAndReturnedDateIsNull (Long userId);
 
+    // Användarens lån som LoanDTO direkt från SQL - för läs-endpoints där inga entiteter behövs
+    // Författarnamnet sätts ihop i frågan (null om boken saknar författare)
+    @Query("SELECT new com.example.library_management_v2.dto.LoanDTO("
+            + "l.id, l.user.id, b.id, b.title, "
+            + "CASE WHEN a.id IS NULL THEN NULL ELSE CONCAT(a.firstName, ' ', a.lastName) END, "
+            + "l.borrowedDate, l.dueDate, l.returnedDate) "
+            + "FROM Loan l JOIN l.book b LEFT JOIN b.author a "
+            + "WHERE l.user.id = :userId ORDER BY l.id")
+    List<LoanDTO> findLoanDetailsByUserId(@Param("userId") Long userId);
+
+    // Flera lån med alla relationer i en SELECT (batch-återlämning)
+    @EntityGraph(attributePaths = {"user", "book", "book.author"})
+    List<Loan> findByIdIn(Collection<Long> ids);
+
+    // Högsta lån-id just nu (0 om det inte finns några lån)
+    @Query("SELECT COALESCE(MAX(l.id), 0) FROM Loan l")
+    long findMaxId();
+
+    // Ett nytt lån per bok i en enda INSERT ... SELECT (batch-lån)
+    // Loan har IDENTITY-id, och då kan Hibernate inte JDBC-batcha vanliga persist() -
+    // en sats för alla rader ger samma effekt. Datumen binds av Hibernate precis som vid save()
+    @Modifying
+    @Query("INSERT INTO Loan (user, book, borrowedDate, dueDate) "
+            + "SELECT u, b, :borrowedDate, :dueDate FROM User u, Book b "
+            + "WHERE u.id = :userId AND b.id IN :bookIds")
+    int insertLoans(@Param("userId") Long userId, @Param("bookIds") Collection<Long> bookIds,
+                    @Param("borrowedDate") LocalDate borrowedDate, @Param("dueDate") LocalDate dueDate);
+
+    // Användarens lån med id större än afterId - läser tillbaka lånen som insertLoans just skapade
+    @Query("SELECT new com.example.library_management_v2.dto.LoanDTO("
+            + "l.id, l.user.id, b.id, b.title, "
+            + "CASE WHEN a.id IS NULL THEN NULL ELSE CONCAT(a.firstName, ' ', a.lastName) END, "
+            + "l.borrowedDate, l.dueDate, l.returnedDate) "
+            + "FROM Loan l JOIN l.book b LEFT JOIN b.author a "
+            + "WHERE l.user.id = :userId AND l.id > :afterId ORDER BY l.id")
+    List<LoanDTO> findLoanDetailsByUserIdAfter(@Param("userId") Long userId, @Param("afterId") long afterId);
 
+    // Flera lån som LoanDTO i en SELECT (OverdueLoanService kontrollerar försening i Java)
+    @Query("SELECT new com.example.library_management_v2.dto.LoanDTO("
+            + "l.id, l.user.id, b.id, b.title, "
+            + "CASE WHEN a.id IS NULL THEN NULL ELSE CONCAT(a.firstName, ' ', a.lastName) END, "
+            + "l.borrowedDate, l.dueDate, l.returnedDate) "
+            + "FROM Loan l JOIN l.book b LEFT JOIN b.author a "
+            + "WHERE l.id IN :ids ORDER BY l.id")
+    List<LoanDTO> findLoanDetailsByIds(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,33 @@
+package com.example.library_management_v2.repository;
+
+import com.example.library_management_v2.dto.LoanDTO;
+import com.example.library_management_v2.entity.OverdueLoan;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OverdueLoanRepository extends JpaRepository<OverdueLoan, Long> {
+
+    // En sida med försenade lån som LoanDTO (keyset på lån-id), med bok och författare i samma SELECT
+    @Query("SELECT new com.example.library_management_v2.dto.LoanDTO("
+            + "l.id, l.user.id, b.id, b.title, "
+            + "CASE WHEN a.id IS NULL THEN NULL ELSE CONCAT(a.firstName, ' ', a.lastName) END, "
+            + "l.borrowedDate, l.dueDate, l.returnedDate) "
+            + "FROM OverdueLoan o JOIN Loan l ON l.id = o.loanId JOIN l.book b LEFT JOIN b.author a "
+            + "WHERE o.loanId > :afterId ORDER BY o.loanId")
+    List<LoanDTO> findOverdueLoanDetails(@Param("afterId") long afterId, Limit limit);
+
+    // Lånet är inte längre försenat (återlämnat eller förlängt) - en DELETE utan att läsa raderna först
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM OverdueLoan o WHERE o.loanId IN :loanIds")
+    int deleteByLoanIds(@Param("loanIds") Collection<Long> loanIds);
+}
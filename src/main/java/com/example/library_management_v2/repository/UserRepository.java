@@ -2,7 +2,11 @@ package com.example.library_management_v2.repository;
 
 import com.example.library_management_v2.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 
@@ -13,6 +17,12 @@ public interface UserRepository extends JpaRepository<User, Long> {
     // Hitta användare baserat på Email
     Optional<User> findByEmail (String email);
 
+    // Ny lösenordshash vid uppgradering (UserDetailsServiceImpl.updatePassword) - bara en UPDATE
+    @Modifying
+    @Transactional
+    @Query("UPDATE User u SET u.password = :password WHERE u.email = :email")
+    int updatePassword(@Param("email") String email, @Param("password") String password);
+
     // Praktisk för att kolla om Email redan finns
     //boolean existByEmail(String email);
 }
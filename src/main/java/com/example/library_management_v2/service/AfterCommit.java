@@ -0,0 +1,27 @@
+package com.example.library_management_v2.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+// Kör något först när den pågående transaktionen har committats (direkt om ingen transaktion pågår)
+// Används för cache-rensning och versionsnummer - annars kan en läsning mellan ändringen och
+// commit se det gamla datat men den nya versionen, och då hänger det gamla kvar
+
+final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+    static void run(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -1,6 +1,7 @@
 // src/main/java/com/example/librarymangementv2/service/AuthorService.java
 package com.example.library_management_v2.service;
 
+import com.example.library_management_v2.config.SQLiteWriter;
 import com.example.library_management_v2.dto.AuthorDTO;
 import com.example.library_management_v2.dto.CreateAuthorDTO;
 import com.example.library_management_v2.entity.Author;
@@ -19,6 +20,9 @@ public class AuthorService {
     @Autowired
     private AuthorRepository authorRepository;
 
+    @Autowired
+    private SQLiteWriter sqliteWriter;
+
     /**
      * Hämtar alla författare i systemet
      * @return Lista med alla författare som AuthorDTO
@@ -81,15 +85,17 @@ public class AuthorService {
             throw new DuplicateAuthorException("En författare med detta namn och födelseår finns redan");
         }
 
-        // Konvertera DTO till entity
-        Author author = new Author();
-        author.setFirstName(createAuthorDTO.getFirstName());
-        author.setLastName(createAuthorDTO.getLastName());
-        author.setBirthYear(createAuthorDTO.getBirthYear());
-        author.setNationality(createAuthorDTO.getNationality());
-
-        // Spara författaren i databasen
-        Author savedAuthor = authorRepository.save(author);
+        // Spara författaren i databasen (via skrivtråden)
+        // Entiteten skapas inuti skrivningen, så att ett omförsök alltid börjar med en ny entitet
+        Author savedAuthor = sqliteWriter.execute(() -> {
+            // Konvertera DTO till entity
+            Author author = new Author();
+            author.setFirstName(createAuthorDTO.getFirstName());
+            author.setLastName(createAuthorDTO.getLastName());
+            author.setBirthYear(createAuthorDTO.getBirthYear());
+            author.setNationality(createAuthorDTO.getNationality());
+            return authorRepository.save(author);
+        });
 
         // Konvertera och returnera den sparade författaren som DTO
         return convertToDTO(savedAuthor);
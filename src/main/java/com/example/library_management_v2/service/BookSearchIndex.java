@@ -0,0 +1,251 @@
+package com.example.library_management_v2.service;
+
+import com.example.library_management_v2.config.SQLiteWriter;
+import com.example.library_management_v2.dto.BookWithDetailsDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Fulltextindex (SQLite FTS5) över boktitlar och författarnamn
+ *
+ * books_fts är en FTS5-tabell med rowid = book_id, skapad av schemamigrering 4 (SQLiteMigrations).
+ * Den hålls i synk av triggers i databasen:
+ * - ny/borttagen bok, ändrad titel eller författare -> raden i books_fts uppdateras
+ * - ändrat författarnamn -> alla författarens böcker uppdateras
+ * Triggers fångar alla skrivningar (JPA, JDBC, sqlite3 i terminalen) - inget behöver anropas från Java.
+ *
+ * Sökningen matchar ord-prefix ("lind" hittar "Lindgren") och sorteras som LIKE-sökningen:
+ * exakt träff, sedan prefix, sedan övriga - och inom varje nivå på relevans (bm25),
+ * där träffar i titeln väger tyngst. Diakritiska tecken ignoreras ("lackberg" hittar "Läckberg").
+ * Skillnad mot LIKE-sökningen: ord-prefix istället för delsträng ("gren" hittar inte "Lindgren"),
+ * och författarsökningen matchar även förnamnet, inte bara efternamnet.
+ *
+ * Indexet används bara mot SQLite (library.search.fts.enabled, standard true).
+ * Mot andra databaser (t.ex. H2 i tester) är available() false och BookService söker med LIKE.
+ * Hela indexet kan byggas om med POST /admin/search/rebuild.
+ */
+@Service
+public class BookSearchIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(BookSearchIndex.class);
+
+    // Vikter för bm25: title, author_first_name, author_last_name
+    private static final String RANK = "bm25(books_fts, 10.0, 2.0, 5.0)";
+
+    // Samma nivåer som LIKE-sökningen (BookRepository.SEARCH_RANK): exakt träff (0) före prefix (1)
+    // före övriga (2), och inom varje nivå bm25. Parametrar: söktexten i gemener, sedan samma text
+    // LIKE-escapad med % efter (null = fältet söks inte)
+    private static final String TIER = "CASE "
+            + "WHEN LOWER(b.title) = ? OR LOWER(a.first_name) = ? OR LOWER(a.last_name) = ? THEN 0 "
+            + "WHEN LOWER(b.title) LIKE ? ESCAPE '\\' "
+            + "OR LOWER(a.first_name) LIKE ? ESCAPE '\\' OR LOWER(a.last_name) LIKE ? ESCAPE '\\' THEN 1 "
+            + "ELSE 2 END";
+
+    private static final RowMapper<BookWithDetailsDTO> BOOK_DETAILS = BookSearchIndex::mapBookDetails;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SQLiteWriter sqliteWriter;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private Environment env;
+
+    private volatile boolean available;
+
+
+    // Tabell och triggers kommer från schemamigreringen - bygg om indexet om det inte stämmer med books
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        if (!env.getProperty("library.search.fts.enabled", Boolean.class, true) || !isSQLite()) {
+            logger.info("Fulltextindex (FTS5) är avstängt - boksökning använder LIKE");
+            return;
+        }
+
+        try {
+            if (count("SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = 'books_fts'") == 0) {
+                logger.warn("Tabellen books_fts saknas (schemamigrering 4) - boksökning använder LIKE");
+                return;
+            }
+
+            long books = count("SELECT COUNT(*) FROM books");
+            long indexed = count("SELECT COUNT(*) FROM books_fts");
+            if (books != indexed) {
+                logger.info("Fulltextindex har {} rader men books har {} - bygger om", indexed, books);
+                rebuild();
+            }
+
+            available = true;
+            logger.info("Fulltextindex (FTS5) klart: {} böcker", books);
+        } catch (Exception e) {
+            // Sökningen fungerar ändå med LIKE, bara långsammare
+            logger.warn("Kunde inte initiera fulltextindex (FTS5), boksökning använder LIKE: {}", e.getMessage());
+        }
+    }
+
+
+    public boolean available() {
+        return available;
+    }
+
+
+    /**
+     * Bygger om hela indexet från books och authors i en transaktion (via skrivtråden)
+     * Behövs normalt inte (triggers håller indexet i synk), men är bra efter
+     * manuella ändringar med triggers avstängda eller om indexet misstänks vara fel
+     * @return Antal indexerade böcker
+     */
+    public int rebuild() {
+        // Deltar i skrivtrådens transaktion, eller får en egen om skrivtråden är avstängd
+        return sqliteWriter.execute(() -> transactionTemplate.execute(status -> rebuildIndex()));
+    }
+
+
+    private int rebuildIndex() {
+        jdbcTemplate.update("DELETE FROM books_fts");
+        jdbcTemplate.update(
+                "INSERT INTO books_fts (rowid, title, author_first_name, author_last_name) "
+                        + "SELECT b.book_id, b.title, a.first_name, a.last_name "
+                        + "FROM books b LEFT JOIN authors a ON a.author_id = b.author_id");
+        // Räkna raderna - update() räknar även FTS5:s interna skrivningar
+        int indexed = (int) count("SELECT COUNT(*) FROM books_fts");
+
+        // Slå ihop indexets segment - snabbare sökningar efter en stor ombyggnad
+        jdbcTemplate.update("INSERT INTO books_fts (books_fts) VALUES ('optimize')");
+
+        logger.info("Fulltextindex ombyggt: {} böcker", indexed);
+        return indexed;
+    }
+
+
+    /**
+     * Sök på titel och/eller författarnamn, sorterat på relevans
+     * @param title Ord att söka i titeln (kan vara null)
+     * @param author Ord att söka i författarens för- och efternamn (kan vara null)
+     * @param matchAll true = både titel och författare måste matcha (AND), false = något räcker (OR)
+     * @param limit Max antal böcker
+     * @param offset Antal träffar att hoppa över
+     * @return Matchande böcker, bäst träff först
+     */
+    public List<BookWithDetailsDTO> search(String title, String author, boolean matchAll, int limit, int offset) {
+        String titleQuery = columnQuery("title", title);
+        String authorQuery = columnQuery("author_first_name author_last_name", author);
+
+        String match;
+        if (titleQuery != null && authorQuery != null) {
+            match = titleQuery + (matchAll ? " AND " : " OR ") + authorQuery;
+        } else if (titleQuery != null) {
+            match = titleQuery;
+        } else if (authorQuery != null) {
+            match = authorQuery;
+        } else {
+            // Söktexten innehöll inga ord (bara skiljetecken) - inget kan matcha
+            return new ArrayList<>();
+        }
+
+        return jdbcTemplate.query(
+                "SELECT b.book_id, b.title, b.publication_year, b.available_copies, b.total_copies, "
+                        + "a.first_name, a.last_name "
+                        + "FROM books_fts "
+                        + "JOIN books b ON b.book_id = books_fts.rowid "
+                        + "LEFT JOIN authors a ON a.author_id = b.author_id "
+                        + "WHERE books_fts MATCH ? "
+                        + "ORDER BY " + TIER + ", " + RANK + ", b.book_id "
+                        + "LIMIT ? OFFSET ?",
+                BOOK_DETAILS, match,
+                lower(title), lower(author), lower(author),
+                likePrefix(title), likePrefix(author), likePrefix(author),
+                limit, offset);
+    }
+
+
+    private static String lower(String text) {
+        return text == null || text.isBlank() ? null : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+
+    // Prefix-mönster för LIKE: \, % och _ escapas så att de matchar sig själva
+    private static String likePrefix(String text) {
+        String lower = lower(text);
+        if (lower == null) {
+            return null;
+        }
+        return lower.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+
+
+    // Gör om fri söktext till ett FTS5-uttryck: {kolumner} : ("ord1"* "ord2"*)
+    // Alla ord måste finnas (AND) och varje ord matchar som prefix.
+    // Orden består bara av bokstäver/siffror, så användaren kan inte skicka in egen FTS5-syntax
+    static String columnQuery(String columns, String text) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+
+        List<String> terms = new ArrayList<>();
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                terms.add("\"" + word + "\"*");
+            }
+        }
+        if (terms.isEmpty()) {
+            return null;
+        }
+
+        return "({" + columns + "} : (" + String.join(" ", terms) + "))";
+    }
+
+
+    private boolean isSQLite() {
+        try {
+            String product = jdbcTemplate.execute((ConnectionCallback<String>)
+                    connection -> connection.getMetaData().getDatabaseProductName());
+            return "SQLite".equalsIgnoreCase(product);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+
+    private long count(String sql) {
+        Long count = jdbcTemplate.queryForObject(sql, Long.class);
+        return count != null ? count : 0;
+    }
+
+
+    private static BookWithDetailsDTO mapBookDetails(ResultSet rs, int rowNum) throws SQLException {
+        return new BookWithDetailsDTO(
+                rs.getLong("book_id"),
+                rs.getString("title"),
+                intOrNull(rs, "publication_year"),
+                intOrNull(rs, "available_copies"),
+                intOrNull(rs, "total_copies"),
+                rs.getString("first_name"),
+                rs.getString("last_name"));
+    }
+
+
+    private static Integer intOrNull(ResultSet rs, String column) throws SQLException {
+        int value = rs.getInt(column);
+        return rs.wasNull() ? null : value;
+    }
+}
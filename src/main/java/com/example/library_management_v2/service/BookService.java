@@ -1,17 +1,37 @@
 package com.example.library_management_v2.service;
 
+import com.example.library_management_v2.config.SQLiteWriter;
 import com.example.library_management_v2.dto.BookDTO;
+import com.example.library_management_v2.dto.BookPageDTO;
 import com.example.library_management_v2.dto.BookWithDetailsDTO;
 import com.example.library_management_v2.entity.Author;
 import com.example.library_management_v2.entity.Book;
 import com.example.library_management_v2.repository.AuthorRepository;
 import com.example.library_management_v2.repository.BookRepository;
+import com.example.library_management_v2.repository.OffsetPageRequest;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class BookService {
@@ -22,46 +42,206 @@ public class BookService {
     @Autowired
     private AuthorRepository authorRepository;
 
+    @Autowired
+    private BookSearchIndex searchIndex;
+
+    @Autowired
+    private CatalogueSearchEngine searchEngine;
+
+    @Autowired
+    private SQLiteWriter sqliteWriter;
+
+    @Autowired
+    private CatalogueCache catalogueCache;
+
+    @Autowired
+    private CatalogueVersions catalogueVersions;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // Läsningar som går via cachen öppnar transaktionen först vid en miss
+    private TransactionTemplate readOnlyTransaction;
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+
+    // Hur ofta NDJSON-strömmen skickas vidare till klienten
+    private static final int STREAM_FLUSH_ROWS = 500;
+
+    // Max antal id:n per IN-lista när sökträffar från minnesindexet hämtas (SQLite har en gräns för parametrar)
+    private static final int ID_CHUNK_SIZE = 500;
+
+
+    @PostConstruct
+    public void init() {
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+
     /**
-     * Hämtar alla böcker i systemet
-     * @return Lista med alla böcker som BookWithDetailsDTO
+     * Hämtar en sida med böcker (keyset-paginering sorterad på id)
+     * Istället för OFFSET letar databasen upp "id > after" via primärnyckeln,
+     * så sida 1000 är lika snabb som sida 1 och inga rader hoppas över vid nya böcker
+     * @param afterId Sista id från föregående sida (null = första sidan)
+     * @param size Antal böcker per sida (begränsas till 1..MAX_PAGE_SIZE)
+     * Sidan läses från CatalogueCache om den finns där - då körs ingen transaktion alls
+     * @return Sidan med böcker och cursor till nästa sida
      */
-    public List<BookWithDetailsDTO> getAllBooks() {
-        List<Book> books = bookRepository.findAll();
-        return books.stream()
+    public BookPageDTO getBooksPage(Long afterId, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        return catalogueCache.getPage(afterId, pageSize,
+                () -> readOnlyTransaction.execute(status -> loadBooksPage(afterId, pageSize)));
+    }
+
+    private BookPageDTO loadBooksPage(Long afterId, int pageSize) {
+        // Hämta en rad extra - finns den så finns det en nästa sida
+        List<Book> books = bookRepository.findByIdGreaterThanOrderByIdAsc(
+                afterId != null ? afterId : 0L, Limit.of(pageSize + 1));
+
+        boolean hasMore = books.size() > pageSize;
+        if (hasMore) {
+            books = books.subList(0, pageSize);
+        }
+
+        List<BookWithDetailsDTO> items = books.stream()
                 .map(this::convertToBookWithDetailsDTO)
                 .collect(Collectors.toList());
+        Long nextCursor = hasMore ? books.get(books.size() - 1).getId() : null;
+
+        return new BookPageDTO(items, nextCursor);
     }
 
     /**
-     * Söker böcker baserat på titel eller författarens efternamn
-     * @param title Titeln att söka efter (kan vara null)
-     * @param authorLastName Författarens efternamn att söka efter (kan vara null)
-     * @return Lista med matchande böcker
+     * Skriver hela katalogen som NDJSON (en JSON-rad per bok) direkt till klienten
+     * Raderna läses från JDBC-cursorn och skrivs ut en i taget - minnet beror inte
+     * på katalogens storlek eftersom varje bok släpps ur persistence context efter att den skrivits
+     * @param out Responsens OutputStream (stängs inte här)
+     */
+    @Transactional(readOnly = true)
+    public void streamAllBooks(OutputStream out) throws IOException {
+        ObjectWriter writer = objectMapper.writerFor(BookWithDetailsDTO.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        try (JsonGenerator json = objectMapper.getFactory().createGenerator(out);
+             Stream<Book> books = bookRepository.streamAllWithAuthor()) {
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            json.setRootValueSeparator(null);   // Raderna skiljs åt med \n nedan, inte mellanslag
+
+            int rows = 0;
+            Iterator<Book> iterator = books.iterator();
+            while (iterator.hasNext()) {
+                Book book = iterator.next();
+                writer.writeValue(json, convertToBookWithDetailsDTO(book));
+                json.writeRaw('\n');
+                entityManager.detach(book);
+
+                if (++rows % STREAM_FLUSH_ROWS == 0) {
+                    json.flush();
+                }
+            }
+            json.flush();
+        }
+    }
+
+    /**
+     * Söker böcker baserat på titel eller författarens namn (något av dem räcker)
+     * @see #searchBooks(String, String, boolean, int, int)
      */
     public List<BookWithDetailsDTO> searchBooks(String title, String authorLastName) {
-        List<Book> results = new ArrayList<>();
+        return searchBooks(title, authorLastName, false, DEFAULT_PAGE_SIZE, 0);
+    }
+
+    /**
+     * Söker böcker baserat på titel och/eller författarens namn
+     * Sökvägen väljs i den här ordningen:
+     * - sökindex i minnet (library.search.memory.enabled): trigram-sökning, bara id:n hämtas från databasen
+     * - fulltextindexet (SQLite FTS5): ord-prefix, bästa träff först
+     * - LIKE-sökning på titel och efternamn (t.ex. H2 i tester)
+     * Alla vägar är en enda fråga där databasen tar bort dubbletter (en bok som matchar både
+     * titel och författare kommer bara med en gång) och sorterar exakt/prefix före delsträng.
+     * Bara den efterfrågade sidan hämtas - en bred sökning läser aldrig hela tabellen till minnet.
+     * Resultatet läses från CatalogueCache om det finns där
+     * @param title Titeln att söka efter (kan vara null)
+     * @param authorLastName Författarens namn att söka efter (kan vara null)
+     * @param matchAll true = både titel och författare måste matcha, false = något av dem räcker
+     * @param limit Max antal böcker (begränsas till 1..MAX_PAGE_SIZE)
+     * @param offset Antal träffar att hoppa över
+     * @return Lista med matchande böcker, bästa träff först
+     */
+    public List<BookWithDetailsDTO> searchBooks(String title, String authorLastName, boolean matchAll,
+                                                int limit, int offset) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        int skip = Math.max(0, offset);
+        return catalogueCache.getSearch(title, authorLastName, matchAll, pageSize, skip,
+                () -> readOnlyTransaction.execute(status -> loadSearch(title, authorLastName, matchAll, pageSize, skip)));
+    }
+
+    private List<BookWithDetailsDTO> loadSearch(String title, String authorLastName, boolean matchAll,
+                                                int pageSize, int skip) {
+        boolean hasTitle = title != null && !title.isEmpty();
+        boolean hasAuthor = authorLastName != null && !authorLastName.isEmpty();
 
-        // Om titel är angiven, sök på den
-        if (title != null && !title.isEmpty()) {
-            results.addAll(bookRepository.findByTitleContainingIgnoreCase(title));
+        if (searchEngine.available() && (hasTitle || hasAuthor)) {
+            return findBookDetailsInOrder(searchEngine.search(title, authorLastName, matchAll, pageSize, skip));
         }
 
-        // Om författarens efternamn är angivet, sök på det
-        if (authorLastName != null && !authorLastName.isEmpty()) {
-            results.addAll(bookRepository.findByAuthorLastNameContainingIgnoreCase(authorLastName));
+        if (searchIndex.available() && (hasTitle || hasAuthor)) {
+            return searchIndex.search(title, authorLastName, matchAll, pageSize, skip);
         }
 
-        // Om ingen sökning angavs, returnera alla böcker
-        if ((title == null || title.isEmpty()) && (authorLastName == null || authorLastName.isEmpty())) {
-            results = bookRepository.findAll();
+        OffsetPageRequest page = new OffsetPageRequest(skip, pageSize);
+
+        // Om ingen sökning angavs, returnera alla böcker (en sida i taget)
+        if (!hasTitle && !hasAuthor) {
+            return bookRepository.findAllBookDetails(page);
         }
 
-        // Konvertera resultaten till DTOs
-        return results.stream()
-                .distinct() // Ta bort eventuella dubbletter
-                .map(this::convertToBookWithDetailsDTO)
-                .collect(Collectors.toList());
+        String titleText = hasTitle ? title.toLowerCase() : null;
+        String authorText = hasAuthor ? authorLastName.toLowerCase() : null;
+        return matchAll
+                ? bookRepository.searchBookDetailsMatchingAll(titleText, likeEscape(titleText),
+                        authorText, likeEscape(authorText), page)
+                : bookRepository.searchBookDetails(titleText, likeEscape(titleText),
+                        authorText, likeEscape(authorText), page);
+    }
+
+    // Hämta böckerna för id:n från sökindexet och behåll indexets ordning (bästa träff först)
+    private List<BookWithDetailsDTO> findBookDetailsInOrder(List<Long> ids) {
+        Map<Long, BookWithDetailsDTO> byId = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += ID_CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + ID_CHUNK_SIZE, ids.size()));
+            for (BookWithDetailsDTO book : bookRepository.findBookDetailsByIds(chunk)) {
+                byId.put(book.getId(), book);
+            }
+        }
+
+        List<BookWithDetailsDTO> result = new ArrayList<>(byId.size());
+        for (Long id : ids) {
+            BookWithDetailsDTO book = byId.get(id);
+            if (book != null) {     // Boken kan ha tagits bort efter att den indexerades
+                result.add(book);
+            }
+        }
+        return result;
+    }
+
+    // Escapa \, % och _ så att de matchar sig själva i LIKE (samma som findBy...Containing)
+    // Frågorna lägger själva till % före/efter - null om fältet inte ska sökas
+    private String likeEscape(String text) {
+        if (text == null) {
+            return null;
+        }
+        return text
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
     }
 
     /**
@@ -70,22 +250,35 @@ public class BookService {
      * @return Den skapade boken som BookDTO
      */
     public BookDTO createBook(BookDTO bookDTO) {
-        // Konvertera DTO till entity
-        Book book = new Book();
-        book.setTitle(bookDTO.getTitle());
-        book.setPublicationYear(bookDTO.getPublicationYear());
-        book.setAvailableCopies(bookDTO.getAvailableCopies());
-        book.setTotalCopies(bookDTO.getTotalCopies());
-
         // Hämta författaren om ett ID är angivet
+        Author author = null;
         if (bookDTO.getAuthorId() != null) {
-            Author author = authorRepository.findById(bookDTO.getAuthorId())
+            author = authorRepository.findById(bookDTO.getAuthorId())
                     .orElseThrow(() -> new RuntimeException("Författaren hittades inte med ID: " + bookDTO.getAuthorId()));
-            book.setAuthor(author);
         }
 
-        // Spara boken i databasen
-        Book savedBook = bookRepository.save(book);
+        // Spara boken i databasen (via skrivtråden) - sökindex och cache uppdateras först när den är committad
+        // Entiteten skapas inuti skrivningen: körs den om (SQLITE_BUSY) får den inte ha kvar id/version från förra försöket
+        Author bookAuthor = author;
+        Book savedBook = sqliteWriter.execute(() -> {
+            // Konvertera DTO till entity
+            Book book = new Book();
+            book.setTitle(bookDTO.getTitle());
+            book.setPublicationYear(bookDTO.getPublicationYear());
+            book.setAvailableCopies(bookDTO.getAvailableCopies());
+            book.setTotalCopies(bookDTO.getTotalCopies());
+            book.setAuthor(bookAuthor);
+            return bookRepository.save(book);
+        });
+
+        // Lägg till boken i sökindexet i minnet (FTS5-indexet uppdateras av triggers)
+        String authorFirstName = savedBook.getAuthor() != null ? savedBook.getAuthor().getFirstName() : null;
+        String authorLastName = savedBook.getAuthor() != null ? savedBook.getAuthor().getLastName() : null;
+        searchEngine.add(savedBook.getId(), savedBook.getTitle(), authorLastName);
+
+        // Rensa cachade sidor/sökningar där boken kan dyka upp
+        catalogueCache.bookCreated(savedBook.getTitle(), authorFirstName, authorLastName);
+        catalogueVersions.booksChanged();
 
         // Konvertera och returnera den sparade boken som DTO
         return convertToBookDTO(savedBook);
@@ -115,8 +308,9 @@ public class BookService {
      * Konverterar en Book entity till BookWithDetailsDTO
      * @param book Book entity att konvertera
      * @return BookWithDetailsDTO med författarinformation
+     * (package-private så att DtoMappingBenchmark kan mäta den)
      */
-    private BookWithDetailsDTO convertToBookWithDetailsDTO(Book book) {
+    BookWithDetailsDTO convertToBookWithDetailsDTO(Book book) {
         BookWithDetailsDTO dto = new BookWithDetailsDTO();
         dto.setId(book.getId());
         dto.setTitle(book.getTitle());
@@ -0,0 +1,212 @@
+package com.example.library_management_v2.service;
+
+import com.example.library_management_v2.dto.BookPageDTO;
+import com.example.library_management_v2.dto.BookWithDetailsDTO;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache för katalogen: sidor från GET /books och resultat från GET /books/search
+ *
+ * Caffeine (W-TinyLFU) med begränsad storlek. Varje post lever max
+ * library.catalogue-cache.ttl-seconds - det är också den längsta tid availableCopies kan vara
+ * inaktuell om databasen ändras utanför appen (sqlite3 i terminalen, en annan instans).
+ *
+ * Ändringar i appen rensar bara de poster som påverkas, efter att transaktionen committats:
+ * - ny bok: sökningar som kan matcha boken, sökningar utan sökord och sista sidan av /books
+ * - lån/återlämning: poster som innehåller boken (availableCopies har ändrats)
+ *
+ * Hit/miss-statistik finns under /actuator/metrics/cache.gets?tag=cache:catalogue
+ */
+@Service
+public class CatalogueCache {
+
+    @Autowired
+    private Environment env;
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    private Cache<Object, Entry> cache;
+
+    private boolean enabled;
+
+    // Räknas upp vid varje rensning - en laddning som pågick samtidigt får inte sparas (kan vara gammal)
+    private final AtomicLong invalidations = new AtomicLong();
+
+
+    // En sida från keyset-pagineringen
+    private record PageKey(long afterId, int size) {
+    }
+
+    // En sökning - texterna är normaliserade (se CatalogueSearchEngine.normalize)
+    private record SearchKey(String title, String author, boolean matchAll, int limit, int offset) {
+    }
+
+    // Det cachade värdet plus de bok-id:n det innehåller (för rensning vid lån)
+    private record Entry(Object value, long[] bookIds, boolean lastPage) {
+
+        boolean contains(long bookId) {
+            for (long id : bookIds) {
+                if (id == bookId) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+
+    @PostConstruct
+    public void init() {
+        configure(env.getProperty("library.catalogue-cache.enabled", Boolean.class, true),
+                env.getProperty("library.catalogue-cache.max-size", Long.class, 10000L),
+                Duration.ofSeconds(env.getProperty("library.catalogue-cache.ttl-seconds", Long.class, 30L)));
+
+        meterRegistry.ifAvailable(registry -> CaffeineCacheMetrics.monitor(registry, cache, "catalogue"));
+    }
+
+
+    void configure(boolean enabled, long maxSize, Duration ttl) {
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+
+    // Hämta en sida från cachen, eller ladda via loader vid miss
+    public BookPageDTO getPage(Long afterId, int size, Supplier<BookPageDTO> loader) {
+        PageKey key = new PageKey(afterId != null ? afterId : 0L, size);
+        return get(key, loader, page -> new Entry(page, ids(page.getItems()), page.getNextCursor() == null));
+    }
+
+
+    // Hämta ett sökresultat från cachen, eller ladda via loader vid miss
+    public List<BookWithDetailsDTO> getSearch(String title, String author, boolean matchAll, int limit, int offset,
+                                              Supplier<List<BookWithDetailsDTO>> loader) {
+        SearchKey key = new SearchKey(CatalogueSearchEngine.normalize(title), CatalogueSearchEngine.normalize(author),
+                matchAll, limit, offset);
+        return get(key, loader, books -> new Entry(books, ids(books), false));
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private <T> T get(Object key, Supplier<T> loader, Function<T, Entry> toEntry) {
+        if (!enabled) {
+            return loader.get();
+        }
+
+        Entry cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return (T) cached.value();
+        }
+
+        long before = invalidations.get();
+        T value = loader.get();
+        cache.put(key, toEntry.apply(value));
+
+        // Rensades något medan vi laddade kan värdet redan vara inaktuellt - spara det inte
+        if (invalidations.get() != before) {
+            cache.invalidate(key);
+        }
+        return value;
+    }
+
+
+    /**
+     * En ny bok har skapats - rensa allt där den kan dyka upp
+     * @param title Bokens titel
+     * @param authorFirstName Författarens förnamn (kan vara null)
+     * @param authorLastName Författarens efternamn (kan vara null)
+     */
+    public void bookCreated(String title, String authorFirstName, String authorLastName) {
+        String normalizedTitle = CatalogueSearchEngine.normalize(title);
+        // FTS5 söker författare i både förnamn och efternamn
+        String normalizedAuthor = CatalogueSearchEngine.normalize(authorFirstName) + " "
+                + CatalogueSearchEngine.normalize(authorLastName);
+
+        afterCommit(() -> removeIf((key, entry) -> {
+            if (key instanceof PageKey) {
+                return entry.lastPage();    // Nya böcker får högst id och hamnar på sista sidan
+            }
+            SearchKey search = (SearchKey) key;
+            if (search.title().isEmpty() && search.author().isEmpty()) {
+                return true;                // Sökning utan sökord = hela katalogen
+            }
+            // Hellre rensa en post för mycket än att missa en träff (alla sökvägar)
+            return mayMatch(search.title(), normalizedTitle) || mayMatch(search.author(), normalizedAuthor);
+        }));
+    }
+
+
+    /**
+     * availableCopies för en bok har ändrats (lån eller återlämning)
+     * @param bookId Bokens id
+     */
+    public void bookChanged(long bookId) {
+        afterCommit(() -> removeIf((key, entry) -> entry.contains(bookId)));
+    }
+
+
+    public void evictAll() {
+        invalidations.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+
+    // Skrivningar är sällsynta jämfört med läsningar - att gå igenom posterna är billigare
+    // än att hålla ett omvänt index (bok-id -> nycklar) i synk vid varje läsning
+    private void removeIf(BiPredicate<Object, Entry> affected) {
+        invalidations.incrementAndGet();
+        cache.asMap().entrySet().removeIf(e -> affected.test(e.getKey(), e.getValue()));
+    }
+
+
+    // Rensa först när ändringen syns för andra - annars kan en läsning hinna cacha det gamla värdet
+    private void afterCommit(Runnable eviction) {
+        if (enabled) {
+            AfterCommit.run(eviction);
+        }
+    }
+
+
+    // Kan söktexten matcha texten? Varje ord i söktexten måste finnas någonstans i texten
+    // (täcker både LIKE '%text%', FTS5:s ordprefix och trigram-sökningen)
+    private static boolean mayMatch(String query, String text) {
+        if (query.isEmpty()) {
+            return false;
+        }
+        for (String word : query.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty() && !text.contains(word)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private static long[] ids(List<BookWithDetailsDTO> books) {
+        long[] ids = new long[books.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = books.get(i).getId();
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,493 @@
+package com.example.library_management_v2.service;
+
+import com.example.library_management_v2.config.SQLiteWriter;
+import com.example.library_management_v2.dto.ImportReportDTO;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Bulk-import av författare och böcker från CSV eller NDJSON (förlagsfiler med 100 000+ titlar)
+ *
+ * Filen läses rad för rad direkt från request-strömmen och varje rad valideras för sig -
+ * en felaktig rad avvisas (med radnummer och orsak i rapporten) utan att stoppa resten.
+ *
+ * Godkända rader skrivs med JdbcTemplate.batchUpdate (PreparedStatement.addBatch), inte via
+ * JPA: Book och Author har IDENTITY-id, och då kan Hibernate inte batcha INSERT alls.
+ * library.import.transaction-rows rader samlas i minnet och skrivs i en transaktion
+ * (en commit), i batchar om library.import.batch-size. Skrivlåset hålls alltså bara medan
+ * raderna skrivs - inte medan en långsam klient laddar upp filen.
+ *
+ * Författare till böckerna slås upp i en karta i minnet som laddas en gång per import,
+ * istället för en findByFirstNameAndLastNameAndBirthYear per rad.
+ *
+ * Varje chunk är en egen transaktion. Kan databasen inte spara en chunk avvisas chunkens rader
+ * (med felet) och importen fortsätter - rapporten visar alltid vad som faktiskt sparades.
+ *
+ * FTS5-indexet uppdateras av triggers i databasen. Katalogcachen och ETag-versionen uppdateras
+ * efter varje commit, sökindexet i minnet av sökmotorns egen tråd.
+ */
+@Service
+public class CatalogueImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CatalogueImportService.class);
+
+    public enum Format { CSV, NDJSON }
+
+    private static final String INSERT_AUTHOR =
+            "INSERT INTO authors (first_name, last_name, birth_year, nationality) VALUES (?, ?, ?, ?)";
+
+    private static final String INSERT_BOOK =
+            "INSERT INTO books (title, publication_year, available_copies, total_copies, author_id, version) "
+                    + "VALUES (?, ?, ?, ?, ?, 0)";
+
+    // Flera författare med samma namn (men olika födelseår) - då måste authorBirthYear anges
+    private static final long AMBIGUOUS = -1L;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private CatalogueSearchEngine searchEngine;
+
+    @Autowired
+    private CatalogueCache catalogueCache;
+
+    @Autowired
+    private CatalogueVersions catalogueVersions;
+
+    @Autowired
+    private SQLiteWriter sqliteWriter;
+
+    @Autowired
+    private Environment env;
+
+    private TransactionTemplate writeTransaction;
+    private int batchSize;
+    private int transactionRows;
+    private int maxRejectedDetails;
+
+
+    // Alla författare som finns, för uppslag utan en fråga per rad
+    private static class AuthorLookup {
+        final Set<Long> ids = new HashSet<>();
+        final Map<String, Long> byNameAndYear = new HashMap<>();
+        final Map<String, Long> byName = new HashMap<>();
+
+        void put(long id, String firstName, String lastName, Integer birthYear) {
+            ids.add(id);
+            byNameAndYear.put(key(firstName, lastName, birthYear), id);
+            byName.merge(key(firstName, lastName, null), id, (existing, added) -> AMBIGUOUS);
+        }
+
+        static String key(String firstName, String lastName, Integer birthYear) {
+            return normalize(firstName) + '\u0000' + normalize(lastName) + '\u0000' + (birthYear != null ? birthYear : "");
+        }
+
+        private static String normalize(String name) {
+            return name == null ? "" : name.trim().toLowerCase(Locale.ROOT);
+        }
+    }
+
+
+    @PostConstruct
+    public void init() {
+        writeTransaction = new TransactionTemplate(transactionManager);
+        batchSize = env.getProperty("library.import.batch-size", Integer.class, 1000);
+        transactionRows = env.getProperty("library.import.transaction-rows", Integer.class, 10000);
+        maxRejectedDetails = env.getProperty("library.import.max-rejected-details", Integer.class, 100);
+    }
+
+
+    /**
+     * Importera författare
+     * Kolumner: firstName, lastName, birthYear (obligatoriska), nationality
+     * En författare som redan finns (samma namn och födelseår) avvisas, precis som i POST /authors
+     */
+    public ImportReportDTO importAuthors(InputStream in, Format format) throws IOException {
+        AuthorLookup authors = loadAuthors();
+
+        return importRows(in, format, "författare", INSERT_AUTHOR, row -> {
+            String firstName = required(row, "firstName");
+            String lastName = required(row, "lastName");
+            Integer birthYear = requiredInt(row, "birthYear");
+            if (birthYear <= 0 || birthYear > Year.now().getValue()) {
+                throw new IllegalArgumentException("Ogiltigt födelseår: " + birthYear);
+            }
+
+            // Samma författare två gånger i filen räknas också som dubblett
+            if (authors.byNameAndYear.putIfAbsent(AuthorLookup.key(firstName, lastName, birthYear), 0L) != null) {
+                throw new IllegalArgumentException("En författare med detta namn och födelseår finns redan");
+            }
+            return new Object[]{firstName, lastName, birthYear, optional(row, "nationality")};
+        }, null);
+    }
+
+
+    /**
+     * Importera böcker
+     * Kolumner: title (obligatorisk), publicationYear, totalCopies (standard 1),
+     * availableCopies (standard totalCopies), och författaren som antingen authorId eller
+     * authorFirstName + authorLastName (+ authorBirthYear om flera har samma namn).
+     * Utan författarkolumner sparas boken utan författare, som i POST /books
+     */
+    public ImportReportDTO importBooks(InputStream in, Format format) throws IOException {
+        AuthorLookup authors = loadAuthors();
+
+        return importRows(in, format, "böcker", INSERT_BOOK, row -> {
+            String title = required(row, "title");
+            Integer publicationYear = optionalInt(row, "publicationYear");
+            Integer totalCopies = optionalInt(row, "totalCopies");
+            if (totalCopies == null) {
+                totalCopies = 1;
+            }
+            Integer availableCopies = optionalInt(row, "availableCopies");
+            if (availableCopies == null) {
+                availableCopies = totalCopies;
+            }
+            if (totalCopies < 0 || availableCopies < 0 || availableCopies > totalCopies) {
+                throw new IllegalArgumentException("Ogiltigt antal exemplar: " + availableCopies + " av " + totalCopies);
+            }
+
+            return new Object[]{title, publicationYear, availableCopies, totalCopies, resolveAuthor(row, authors)};
+        }, this::indexNewBooks);
+    }
+
+
+    // Författarens id för en bokrad (null = ingen författare angiven)
+    private Long resolveAuthor(Map<String, String> row, AuthorLookup authors) {
+        Long authorId = optionalLong(row, "authorId");
+        if (authorId != null) {
+            if (!authors.ids.contains(authorId)) {
+                throw new IllegalArgumentException("Författaren hittades inte med ID: " + authorId);
+            }
+            return authorId;
+        }
+
+        String firstName = optional(row, "authorFirstName");
+        String lastName = optional(row, "authorLastName");
+        if (firstName == null && lastName == null) {
+            return null;
+        }
+
+        Integer birthYear = optionalInt(row, "authorBirthYear");
+        Long id = birthYear != null
+                ? authors.byNameAndYear.get(AuthorLookup.key(firstName, lastName, birthYear))
+                : authors.byName.get(AuthorLookup.key(firstName, lastName, null));
+
+        if (id == null) {
+            throw new IllegalArgumentException("Författaren " + firstName + " " + lastName + " hittades inte");
+        }
+        if (id == AMBIGUOUS) {
+            throw new IllegalArgumentException("Flera författare heter " + firstName + " " + lastName
+                    + " - ange authorBirthYear");
+        }
+        return id;
+    }
+
+
+    /**
+     * Läs, validera och skriv alla rader
+     * @param toParameters Gör om en rad till parametrar för insertSql - kastar IllegalArgumentException för att avvisa raden
+     * @param afterInsert Körs i samma transaktion efter varje chunk (null = inget)
+     */
+    private ImportReportDTO importRows(InputStream in, Format format, String what, String insertSql,
+                                       Function<Map<String, String>, Object[]> toParameters,
+                                       AfterInsert afterInsert) throws IOException {
+        long start = System.currentTimeMillis();
+        ImportReportDTO report = new ImportReportDTO();
+        List<Object[]> pending = new ArrayList<>(transactionRows);
+        List<Long> pendingLines = new ArrayList<>(transactionRows);
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        List<String> header = null;
+        long lineNumber = 0;
+        String line;
+
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (lineNumber == 1 && line.startsWith("\uFEFF")) {
+                line = line.substring(1);   // BOM från Excel
+            }
+            if (line.isBlank()) {
+                continue;
+            }
+
+            try {
+                Map<String, String> row;
+                if (format == Format.CSV) {
+                    if (header == null) {
+                        header = parseCsvLine(line);
+                        continue;
+                    }
+                    row = csvRow(header, parseCsvLine(line));
+                } else {
+                    row = jsonRow(line);
+                }
+
+                pending.add(toParameters.apply(row));
+                pendingLines.add(lineNumber);
+            } catch (IllegalArgumentException e) {
+                reject(report, lineNumber, e.getMessage());
+            }
+
+            if (pending.size() >= transactionRows) {
+                writeChunk(report, insertSql, pending, pendingLines, afterInsert);
+            }
+        }
+
+        if (format == Format.CSV && header == null) {
+            throw new IllegalArgumentException("CSV-filen saknar rubrikrad");
+        }
+        if (!pending.isEmpty()) {
+            writeChunk(report, insertSql, pending, pendingLines, afterInsert);
+        }
+
+        long duration = System.currentTimeMillis() - start;
+        report.setDurationMs(duration);
+        report.setRowsPerSecond(report.getImported() * 1000 / Math.max(duration, 1));
+
+        logger.info("Import av {}: {} rader, {} avvisade, {} ms ({} rader/s)",
+                what, report.getImported(), report.getRejected(), duration, report.getRowsPerSecond());
+        return report;
+    }
+
+
+    // Skriv en chunk och töm den. Tidigare chunkar är redan committade - misslyckas den här
+    // (t.ex. en rad som databasen inte accepterar) rullas bara den tillbaka, dess rader avvisas
+    // och importen fortsätter, så att rapporten stämmer med det som faktiskt sparades
+    private void writeChunk(ImportReportDTO report, String insertSql, List<Object[]> rows, List<Long> lines,
+                            AfterInsert afterInsert) {
+        try {
+            write(insertSql, rows, afterInsert);
+            report.setImported(report.getImported() + rows.size());
+        } catch (DataAccessException e) {
+            String error = "Raderna " + lines.get(0) + "-" + lines.get(lines.size() - 1)
+                    + " kunde inte sparas: " + e.getMostSpecificCause().getMessage();
+            logger.warn("Import: {}", error);
+            lines.forEach(line -> reject(report, line, error));
+        }
+        rows.clear();
+        lines.clear();
+    }
+
+
+    // Skriv en chunk i en transaktion på skrivtråden, batchSize rader per executeBatch
+    private void write(String insertSql, List<Object[]> rows, AfterInsert afterInsert) {
+        sqliteWriter.execute(() -> writeTransaction.execute(status -> {
+            Long lastId = afterInsert != null
+                    ? jdbcTemplate.queryForObject("SELECT COALESCE(MAX(book_id), 0) FROM books", Long.class)
+                    : null;
+
+            for (int from = 0; from < rows.size(); from += batchSize) {
+                jdbcTemplate.batchUpdate(insertSql, rows.subList(from, Math.min(from + batchSize, rows.size())));
+            }
+
+            if (afterInsert != null) {
+                afterInsert.run(lastId);
+            }
+            return null;
+        }));
+    }
+
+
+    // Körs i transaktionen efter en chunk med böcker - skrivlåset hålls, så alla böcker
+    // med högre id än lastId är de vi just skrev
+    @FunctionalInterface
+    private interface AfterInsert {
+        void run(long lastId);
+    }
+
+
+    private void indexNewBooks(long lastId) {
+        if (searchEngine.available()) {
+            List<Long> ids = new ArrayList<>();
+            List<String> titles = new ArrayList<>();
+            List<String> authorLastNames = new ArrayList<>();
+            jdbcTemplate.query("SELECT b.book_id, b.title, a.last_name FROM books b "
+                    + "LEFT JOIN authors a ON a.author_id = b.author_id "
+                    + "WHERE b.book_id > ? ORDER BY b.book_id", rs -> {
+                ids.add(rs.getLong(1));
+                titles.add(rs.getString(2));
+                authorLastNames.add(rs.getString(3));
+            }, lastId);
+
+            // Indexeringen (och sammanslagningen med hela indexet) görs av sökmotorns egen tråd -
+            // inte på skrivtråden, där nästa chunk väntar. Cachen töms igen när böckerna är sökbara
+            long[] bookIds = ids.stream().mapToLong(Long::longValue).toArray();
+            AfterCommit.run(() -> searchEngine.addAllInBackground(bookIds, titles.toArray(new String[0]),
+                    authorLastNames.toArray(new String[0]), bookIds.length).thenRun(catalogueCache::evictAll));
+        }
+
+        // Många nya böcker på en gång - enklare och billigare att tömma cachen än att rensa post för post
+        AfterCommit.run(catalogueCache::evictAll);
+        catalogueVersions.booksChanged();
+    }
+
+
+    private AuthorLookup loadAuthors() {
+        AuthorLookup authors = new AuthorLookup();
+        jdbcTemplate.query("SELECT author_id, first_name, last_name, birth_year FROM authors",
+                rs -> {
+                    int birthYear = rs.getInt(4);
+                    authors.put(rs.getLong(1), rs.getString(2), rs.getString(3), rs.wasNull() ? null : birthYear);
+                });
+        return authors;
+    }
+
+
+    private void reject(ImportReportDTO report, long lineNumber, String error) {
+        report.setRejected(report.getRejected() + 1);
+        if (report.getRejectedRows().size() < maxRejectedDetails) {
+            report.getRejectedRows().add(new ImportReportDTO.RejectedRow(lineNumber, error));
+        }
+    }
+
+
+    // Kolumnnamn jämförs utan hänsyn till versaler ("firstName", "firstname" och "FIRSTNAME" är samma)
+    private static Map<String, String> csvRow(List<String> header, List<String> values) {
+        if (values.size() != header.size()) {
+            throw new IllegalArgumentException("Raden har " + values.size() + " fält men rubrikraden har " + header.size());
+        }
+        Map<String, String> row = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            String value = values.get(i).trim();
+            row.put(header.get(i).trim().toLowerCase(Locale.ROOT), value.isEmpty() ? null : value);
+        }
+        return row;
+    }
+
+
+    private Map<String, String> jsonRow(String line) {
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(line);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Ogiltig JSON: " + e.getOriginalMessage());
+        }
+        if (node == null || !node.isObject()) {
+            throw new IllegalArgumentException("Varje rad måste vara ett JSON-objekt");
+        }
+
+        Map<String, String> row = new HashMap<>();
+        for (Iterator<Map.Entry<String, JsonNode>> fields = node.fields(); fields.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            String value = field.getValue().isNull() ? null : field.getValue().asText().trim();
+            row.put(field.getKey().toLowerCase(Locale.ROOT), value == null || value.isEmpty() ? null : value);
+        }
+        return row;
+    }
+
+
+    // En CSV-rad (RFC 4180): fält med komma eller citattecken omges av "", och "" inuti är ett "
+    // Fält som sträcker sig över flera rader stöds inte - varje post måste ligga på en rad
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+
+        if (quoted) {
+            throw new IllegalArgumentException("Citattecknet avslutas inte på raden");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+
+    private static String optional(Map<String, String> row, String column) {
+        return row.get(column.toLowerCase(Locale.ROOT));
+    }
+
+
+    private static String required(Map<String, String> row, String column) {
+        String value = optional(row, column);
+        if (value == null) {
+            throw new IllegalArgumentException(column + " saknas");
+        }
+        return value;
+    }
+
+
+    private static Integer requiredInt(Map<String, String> row, String column) {
+        Integer value = optionalInt(row, column);
+        if (value == null) {
+            throw new IllegalArgumentException(column + " saknas");
+        }
+        return value;
+    }
+
+
+    private static Integer optionalInt(Map<String, String> row, String column) {
+        Long value = optionalLong(row, column);
+        if (value != null && (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)) {
+            throw new IllegalArgumentException(column + " är för stort: " + value);
+        }
+        return value != null ? value.intValue() : null;
+    }
+
+
+    private static Long optionalLong(Map<String, String> row, String column) {
+        String value = optional(row, column);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(column + " är inte ett heltal: " + value);
+        }
+    }
+}
@@ -0,0 +1,748 @@
+package com.example.library_management_v2.service;
+
+import com.example.library_management_v2.repository.BookRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
+
+/**
+ * Sökmotor i minnet för typeahead-sökning på titel och författarens efternamn
+ *
+ * Varje fält har ett trigram-index (alla 3-teckenssekvenser i texten) som bara består av
+ * primitiva arrayer - inga Book-objekt, inga boxade nycklar:
+ * - text/textStart: den normaliserade texten för alla böcker i en enda char[]
+ * - grams/postingStart/postings: sorterade trigram -> lista med dokument (CSR-format)
+ *
+ * En sökning slår upp sökordets trigram, tar snittet av dokumentlistorna och kontrollerar
+ * sedan att sökordet verkligen finns i texten (samma träffar som LIKE '%ord%', utan att
+ * läsa hela tabellen). Exakt träff > prefix > ordprefix > delsträng vid sorteringen.
+ *
+ * Indexet byggs vid uppstart från BookRepository. Nya böcker (add) får ett eget litet
+ * delta-segment - bara de nya böckerna indexeras. När deltan blir stora slås de ihop med
+ * bas-segmentet på sökmotorns egen tråd, och den nya snapshoten byts in när den är klar.
+ * Läsningar går mot en oföränderlig snapshot och behöver aldrig låsa.
+ *
+ * Aktiveras med library.search.memory.enabled=true (standard false).
+ */
+@Service
+public class CatalogueSearchEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(CatalogueSearchEngine.class);
+
+    // Varje sökning går igenom alla delta-segment - så många böcker/segment innan de slås ihop
+    private static final int MAX_DELTA_DOCS = 1024;
+    private static final int MAX_DELTA_SEGMENTS = 32;
+
+    // Rangordning av träffar - lägre är bättre
+    private static final int RANK_EXACT = 0;
+    private static final int RANK_PREFIX = 1;
+    private static final int RANK_WORD_PREFIX = 2;
+    private static final int RANK_SUBSTRING = 3;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private Environment env;
+
+    private boolean enabled;
+
+    private volatile boolean available;
+
+    // Det som sökningarna läser - byts ut i sin helhet vid varje ändring (under "this")
+    private volatile Snapshot snapshot = new Snapshot(Segment.EMPTY, new Segment[0]);
+
+    // En sammanslagning ligger i kön eller pågår (skyddas av "this")
+    private boolean mergeScheduled;
+
+
+    // Indexering i bakgrunden (addAllInBackground) och sammanslagningar - en tråd, så att
+    // tilläggen sker i ordning och bara en sammanslagning pågår åt gången
+    private final ExecutorService indexer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "search-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+
+    @PostConstruct
+    public void init() {
+        enabled = env.getProperty("library.search.memory.enabled", Boolean.class, false);
+    }
+
+
+    @PreDestroy
+    public void shutdown() {
+        indexer.shutdownNow();
+    }
+
+
+    // Bygg indexet från hela katalogen
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        if (!enabled) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+            readOnly.setReadOnly(true);
+
+            long[][] ids = {new long[1024]};
+            List<String> titles = new ArrayList<>();
+            List<String> authors = new ArrayList<>();
+
+            readOnly.executeWithoutResult(status -> {
+                try (Stream<BookRepository.SearchableBook> books = bookRepository.streamSearchableBooks()) {
+                    books.forEach(book -> {
+                        if (titles.size() == ids[0].length) {
+                            ids[0] = Arrays.copyOf(ids[0], ids[0].length * 2);
+                        }
+                        ids[0][titles.size()] = book.getId();
+                        titles.add(normalize(book.getTitle()));
+                        authors.add(normalize(book.getAuthorLastName()));
+                    });
+                }
+            });
+
+            load(ids[0], titles.toArray(new String[0]), authors.toArray(new String[0]), titles.size());
+            available = true;
+
+            Snapshot current = snapshot;
+            logger.info("Sökindex i minnet klart: {} böcker, ~{} KB, {} ms",
+                    current.base.size() + current.deltaDocs(),
+                    Stream.concat(Stream.of(current.base), Arrays.stream(current.deltas))
+                            .mapToLong(Segment::memoryBytes).sum() / 1024,
+                    System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            enabled = false;
+            logger.warn("Kunde inte bygga sökindex i minnet - boksökningen använder databasen: {}", e.getMessage());
+        }
+    }
+
+
+    public boolean available() {
+        return available;
+    }
+
+
+    // Ersätt bas-segmentet (titles/authors måste redan vara normaliserade)
+    // Böcker som lagts till under tiden ligger kvar i delta-segmenten
+    void load(long[] ids, String[] titles, String[] authors, int count) {
+        Segment base = Segment.build(ids, titles, authors, count);
+        synchronized (this) {
+            snapshot = new Snapshot(base, snapshot.deltas);
+        }
+    }
+
+
+    /**
+     * Lägg till en ny bok i indexet (anropas efter att boken sparats)
+     * @param bookId Bokens id
+     * @param title Bokens titel
+     * @param authorLastName Författarens efternamn (kan vara null)
+     */
+    public void add(long bookId, String title, String authorLastName) {
+        addAll(new long[]{bookId}, new String[]{title}, new String[]{authorLastName}, 1);
+    }
+
+
+    /**
+     * Lägg till många nya böcker på en gång (bulk-import) - de får ett gemensamt delta-segment
+     * @param count Antal böcker att ta från arrayerna (titlar/efternamn normaliseras här)
+     */
+    public void addAll(long[] bookIds, String[] titles, String[] authorLastNames, int count) {
+        if (!enabled || count == 0) {
+            return;
+        }
+
+        // Bara de nya böckerna indexeras, utanför låset
+        String[] normalizedTitles = new String[count];
+        String[] normalizedAuthors = new String[count];
+        for (int i = 0; i < count; i++) {
+            normalizedTitles[i] = normalize(titles[i]);
+            normalizedAuthors[i] = normalize(authorLastNames[i]);
+        }
+        Segment delta = Segment.build(bookIds, normalizedTitles, normalizedAuthors, count);
+
+        synchronized (this) {
+            Snapshot current = snapshot;
+            Segment[] deltas = Arrays.copyOf(current.deltas, current.deltas.length + 1);
+            deltas[current.deltas.length] = delta;
+            snapshot = new Snapshot(current.base, deltas);
+            scheduleMergeIfNeeded();
+        }
+    }
+
+
+    // Anropas under "this"
+    private void scheduleMergeIfNeeded() {
+        Snapshot current = snapshot;
+        if (mergeScheduled
+                || (current.deltaDocs() <= MAX_DELTA_DOCS && current.deltas.length <= MAX_DELTA_SEGMENTS)) {
+            return;
+        }
+        try {
+            indexer.execute(this::mergeDeltas);
+            mergeScheduled = true;
+        } catch (RejectedExecutionException e) {
+            // Avstängning pågår - deltan ligger kvar och är fortfarande sökbara
+        }
+    }
+
+
+    // Slå ihop bas + delta-segment till ett nytt bas-segment. Bygget (O(katalogen)) görs utan
+    // lås - tillägg och sökningar fortsätter mot den gamla snapshoten under tiden
+    private void mergeDeltas() {
+        Snapshot merging = snapshot;
+        Segment merged;
+        try {
+            merged = Segment.merge(merging.base, merging.deltas);
+        } catch (RuntimeException e) {
+            logger.error("Kunde inte slå ihop sökindexets delta-segment", e);
+            synchronized (this) {
+                mergeScheduled = false;
+            }
+            return;
+        }
+
+        synchronized (this) {
+            mergeScheduled = false;
+            Snapshot current = snapshot;
+            // Deltan läggs bara till i slutet - de som kommit under bygget ligger kvar.
+            // Har load() bytt bas-segmentet under tiden gäller inte sammanslagningen längre
+            if (current.base == merging.base) {
+                snapshot = new Snapshot(merged,
+                        Arrays.copyOfRange(current.deltas, merging.deltas.length, current.deltas.length));
+            }
+            scheduleMergeIfNeeded();
+        }
+    }
+
+
+    // Vänta tills allt som ligger i sökmotorns kö (tillägg, sammanslagningar) är klart
+    void awaitIndexing() throws Exception {
+        indexer.submit(() -> { }).get();
+    }
+
+
+    /**
+     * Som addAll, men på sökmotorns egen tråd - för stora mängder (bulk-import) som inte ska
+     * byggas in i indexet på den anropande tråden (t.ex. skrivtråden)
+     * @return Klar när böckerna är sökbara
+     */
+    public CompletableFuture<Void> addAllInBackground(long[] bookIds, String[] titles, String[] authorLastNames, int count) {
+        if (!enabled || count == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> addAll(bookIds, titles, authorLastNames, count), indexer)
+                .whenComplete((result, e) -> {
+                    if (e != null) {
+                        logger.error("Kunde inte lägga till {} böcker i sökindexet", count, e);
+                    }
+                });
+    }
+
+
+    /**
+     * Sök böcker vars titel och/eller författares efternamn innehåller söktexten
+     * @param title Text att hitta i titeln (null = sök inte på titel)
+     * @param authorLastName Text att hitta i efternamnet (null = sök inte på författare)
+     * @param matchAll true = båda måste matcha (AND), false = något av dem räcker (OR)
+     * @param limit Max antal id:n
+     * @param offset Antal träffar att hoppa över
+     * @return Matchande bok-id:n för sidan, bästa träff först
+     */
+    public List<Long> search(String title, String authorLastName, boolean matchAll, int limit, int offset) {
+        char[] titleQuery = query(title);
+        char[] authorQuery = query(authorLastName);
+        if ((titleQuery == null && authorQuery == null) || limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        Snapshot current = snapshot;
+        long[] keys = current.base.search(titleQuery, authorQuery, matchAll);
+        int baseMatches = keys.length;
+        for (Segment delta : current.deltas) {
+            long[] deltaKeys = delta.search(titleQuery, authorQuery, matchAll);
+            keys = Arrays.copyOf(keys, keys.length + deltaKeys.length);
+            System.arraycopy(deltaKeys, 0, keys, keys.length - deltaKeys.length, deltaKeys.length);
+        }
+
+        // Samma bok kan finnas i både bas och delta (tillagd medan indexet byggdes) - med samma
+        // nyckel. Högst en dubblett per delta-träff, så så många extra räcker för en hel sida
+        long wanted = (long) offset + limit + (keys.length - baseMatches);
+        long[] best = smallest(keys, (int) Math.min(wanted, keys.length));
+
+        List<Long> ids = new ArrayList<>(Math.min(limit, best.length));
+        int skipped = 0;
+        for (int i = 0; i < best.length && ids.size() < limit; i++) {
+            if (i > 0 && best[i] == best[i - 1]) {
+                continue;
+            }
+            if (skipped < offset) {
+                skipped++;
+                continue;
+            }
+            ids.add(Segment.bookId(best[i]));
+        }
+        return ids;
+    }
+
+
+    // De count minsta nycklarna, sorterade. Sorteringsnyckeln innehåller rang, titellängd och
+    // bok-id - en vanlig long-jämförelse räcker. En max-heap med count platser istället för att
+    // sortera alla träffar när sidan bara är en liten del av dem (t.ex. "a" i hela katalogen)
+    static long[] smallest(long[] keys, int count) {
+        if (count >= keys.length / 2) {
+            long[] sorted = keys.clone();
+            Arrays.sort(sorted);
+            return Arrays.copyOf(sorted, count);
+        }
+
+        long[] heap = Arrays.copyOf(keys, count);
+        for (int i = count / 2 - 1; i >= 0; i--) {
+            siftDown(heap, i, count);
+        }
+        for (int i = count; i < keys.length; i++) {
+            if (keys[i] < heap[0]) {
+                heap[0] = keys[i];
+                siftDown(heap, 0, count);
+            }
+        }
+        Arrays.sort(heap);
+        return heap;
+    }
+
+
+    private static void siftDown(long[] heap, int i, int size) {
+        while (true) {
+            int largest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && heap[left] > heap[largest]) {
+                largest = left;
+            }
+            if (right < size && heap[right] > heap[largest]) {
+                largest = right;
+            }
+            if (largest == i) {
+                return;
+            }
+            long tmp = heap[i];
+            heap[i] = heap[largest];
+            heap[largest] = tmp;
+            i = largest;
+        }
+    }
+
+
+    private static char[] query(String text) {
+        String normalized = normalize(text);
+        return normalized.isEmpty() ? null : normalized.toCharArray();
+    }
+
+
+    // Gemener utan diakritiska tecken ("Läckberg" -> "lackberg")
+    static String normalize(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder result = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                result.append(c);
+            }
+        }
+        return result.toString().toLowerCase(Locale.ROOT);
+    }
+
+
+    private record Snapshot(Segment base, Segment[] deltas) {
+
+        int deltaDocs() {
+            int docs = 0;
+            for (Segment delta : deltas) {
+                docs += delta.size();
+            }
+            return docs;
+        }
+    }
+
+
+    // Oföränderligt segment: bok-id:n plus ett index per fält
+    private static final class Segment {
+
+        static final Segment EMPTY = build(new long[0], new String[0], new String[0], 0);
+
+        // Sorteringsnyckel: rang (2 bitar) | titellängd (14 bitar) | bok-id (44 bitar)
+        private static final int ID_BITS = 44;
+        private static final int LENGTH_BITS = 14;
+
+        private final long[] bookIds;
+        private final FieldIndex titles;
+        private final FieldIndex authors;
+
+        private Segment(long[] bookIds, FieldIndex titles, FieldIndex authors) {
+            this.bookIds = bookIds;
+            this.titles = titles;
+            this.authors = authors;
+        }
+
+        static Segment build(long[] ids, String[] titles, String[] authors, int count) {
+            return new Segment(Arrays.copyOf(ids, count),
+                    FieldIndex.build(titles, count), FieldIndex.build(authors, count));
+        }
+
+        static Segment merge(Segment base, Segment[] deltas) {
+            int total = base.size();
+            for (Segment delta : deltas) {
+                total += delta.size();
+            }
+            long[] mergedIds = new long[total];
+            String[] mergedTitles = new String[total];
+            String[] mergedAuthors = new String[total];
+            int position = 0;
+            for (Segment segment : Stream.concat(Stream.of(base), Arrays.stream(deltas)).toList()) {
+                for (int doc = 0; doc < segment.size(); doc++, position++) {
+                    mergedIds[position] = segment.bookIds[doc];
+                    mergedTitles[position] = segment.titles.text(doc);
+                    mergedAuthors[position] = segment.authors.text(doc);
+                }
+            }
+            return build(mergedIds, mergedTitles, mergedAuthors, total);
+        }
+
+        int size() {
+            return bookIds.length;
+        }
+
+        long memoryBytes() {
+            return bookIds.length * 8L + titles.memoryBytes() + authors.memoryBytes();
+        }
+
+        static long bookId(long key) {
+            return key & ((1L << ID_BITS) - 1);
+        }
+
+        // Returnerar en sorteringsnyckel per matchande dokument
+        long[] search(char[] titleQuery, char[] authorQuery, boolean matchAll) {
+            if (size() == 0) {
+                return new long[0];
+            }
+
+            Matches byTitle = titleQuery != null ? titles.match(titleQuery) : null;
+            Matches byAuthor = authorQuery != null ? authors.match(authorQuery) : null;
+            Matches combined;
+            if (byTitle == null) {
+                combined = byAuthor;
+            } else if (byAuthor == null) {
+                combined = byTitle;
+            } else {
+                combined = matchAll ? byTitle.and(byAuthor) : byTitle.or(byAuthor);
+            }
+
+            long[] keys = new long[combined.size];
+            for (int i = 0; i < combined.size; i++) {
+                int doc = combined.docs[i];
+                long length = Math.min(titles.length(doc), (1 << LENGTH_BITS) - 1);
+                keys[i] = ((long) combined.ranks[i] << (ID_BITS + LENGTH_BITS))
+                        | (length << ID_BITS)
+                        | bookIds[doc];
+            }
+            return keys;
+        }
+    }
+
+
+    // Trigram-index för ett fält (t.ex. titel) i ett segment
+    private static final class FieldIndex {
+
+        // Ett trigram = 3 tecken x 14 bitar. Under bygget packas (trigram, dokument) i en long
+        private static final int CHAR_BITS = 14;
+        private static final int DOC_BITS = 63 - 3 * CHAR_BITS;
+        private static final int MAX_DOCS = 1 << DOC_BITS;
+
+        private final char[] text;
+        private final int[] textStart;     // dokument d = text[textStart[d] .. textStart[d + 1])
+        private final long[] grams;        // sorterade trigram
+        private final int[] postingStart;  // trigram g -> postings[postingStart[g] .. postingStart[g + 1])
+        private final int[] postings;      // dokument, stigande per trigram
+
+        private FieldIndex(char[] text, int[] textStart, long[] grams, int[] postingStart, int[] postings) {
+            this.text = text;
+            this.textStart = textStart;
+            this.grams = grams;
+            this.postingStart = postingStart;
+            this.postings = postings;
+        }
+
+        static FieldIndex build(String[] texts, int count) {
+            if (count > MAX_DOCS) {
+                throw new IllegalStateException("För många böcker för sökindexet: " + count);
+            }
+
+            int totalChars = 0;
+            int maxPairs = 0;
+            for (int doc = 0; doc < count; doc++) {
+                totalChars += texts[doc].length();
+                maxPairs += Math.max(0, texts[doc].length() - 2);
+            }
+
+            char[] text = new char[totalChars];
+            int[] textStart = new int[count + 1];
+            long[] pairs = new long[maxPairs];
+            int pairCount = 0;
+
+            int position = 0;
+            for (int doc = 0; doc < count; doc++) {
+                String value = texts[doc];
+                value.getChars(0, value.length(), text, position);
+                textStart[doc] = position;
+                for (int i = position; i + 2 < position + value.length(); i++) {
+                    pairs[pairCount++] = (gram(text, i) << DOC_BITS) | doc;
+                }
+                position += value.length();
+            }
+            textStart[count] = position;
+
+            // Efter sortering ligger varje trigram i följd, med dokumenten i stigande ordning
+            Arrays.sort(pairs, 0, pairCount);
+
+            long[] grams = new long[pairCount];
+            int[] postingStart = new int[pairCount + 1];
+            int[] postings = new int[pairCount];
+            int gramCount = 0;
+            int postingCount = 0;
+            for (int i = 0; i < pairCount; i++) {
+                if (i > 0 && pairs[i] == pairs[i - 1]) {
+                    continue;   // Samma trigram flera gånger i samma dokument
+                }
+                long gram = pairs[i] >>> DOC_BITS;
+                if (gramCount == 0 || grams[gramCount - 1] != gram) {
+                    grams[gramCount] = gram;
+                    postingStart[gramCount] = postingCount;
+                    gramCount++;
+                }
+                postings[postingCount++] = (int) (pairs[i] & (MAX_DOCS - 1));
+            }
+            postingStart[gramCount] = postingCount;
+
+            return new FieldIndex(text, textStart,
+                    Arrays.copyOf(grams, gramCount),
+                    Arrays.copyOf(postingStart, gramCount + 1),
+                    Arrays.copyOf(postings, postingCount));
+        }
+
+        // Tecken utanför 14 bitar viks ihop - ger bara extra kandidater som kontrollen sorterar bort
+        private static long gram(char[] chars, int i) {
+            return (code(chars[i]) << (2 * CHAR_BITS)) | (code(chars[i + 1]) << CHAR_BITS) | code(chars[i + 2]);
+        }
+
+        private static long code(char c) {
+            return c & ((1 << CHAR_BITS) - 1);
+        }
+
+        int documents() {
+            return textStart.length - 1;
+        }
+
+        int length(int doc) {
+            return textStart[doc + 1] - textStart[doc];
+        }
+
+        String text(int doc) {
+            return new String(text, textStart[doc], length(doc));
+        }
+
+        long memoryBytes() {
+            return text.length * 2L + textStart.length * 4L + grams.length * 8L
+                    + postingStart.length * 4L + postings.length * 4L;
+        }
+
+        Matches match(char[] query) {
+            int[] candidates = query.length >= 3 ? candidates(query) : null;
+            int candidateCount = candidates != null ? candidates.length : documents();
+
+            Matches matches = new Matches(Math.min(candidateCount, 64));
+            for (int i = 0; i < candidateCount; i++) {
+                int doc = candidates != null ? candidates[i] : i;
+                int rank = rank(doc, query);
+                if (rank >= 0) {
+                    matches.add(doc, rank);
+                }
+            }
+            return matches;
+        }
+
+        // Dokument som innehåller alla sökordets trigram (snittet av dokumentlistorna)
+        private int[] candidates(char[] query) {
+            int gramCount = query.length - 2;
+            int[] ranges = new int[gramCount];
+            int shortest = -1;
+            for (int i = 0; i < gramCount; i++) {
+                int g = Arrays.binarySearch(grams, gram(query, i));
+                if (g < 0) {
+                    return new int[0];  // Ett trigram finns inte alls - inga träffar
+                }
+                ranges[i] = g;
+                if (shortest < 0 || postingLength(g) < postingLength(ranges[shortest])) {
+                    shortest = i;
+                }
+            }
+
+            int start = postingStart[ranges[shortest]];
+            int[] result = Arrays.copyOfRange(postings, start, start + postingLength(ranges[shortest]));
+            int size = result.length;
+
+            for (int i = 0; i < gramCount && size > 0; i++) {
+                if (i == shortest) {
+                    continue;
+                }
+                int from = postingStart[ranges[i]];
+                int to = postingStart[ranges[i] + 1];
+                int kept = 0;
+                for (int j = 0; j < size; j++) {
+                    if (Arrays.binarySearch(postings, from, to, result[j]) >= 0) {
+                        result[kept++] = result[j];
+                    }
+                }
+                size = kept;
+            }
+            return Arrays.copyOf(result, size);
+        }
+
+        private int postingLength(int g) {
+            return postingStart[g + 1] - postingStart[g];
+        }
+
+        // -1 om query inte finns i dokumentet, annars rang för första förekomsten
+        private int rank(int doc, char[] query) {
+            int start = textStart[doc];
+            int end = textStart[doc + 1];
+            int last = end - query.length;
+
+            for (int i = start; i <= last; i++) {
+                if (regionMatches(i, query)) {
+                    if (i == start) {
+                        return end - start == query.length ? RANK_EXACT : RANK_PREFIX;
+                    }
+                    if (!Character.isLetterOrDigit(text[i - 1])) {
+                        return RANK_WORD_PREFIX;
+                    }
+                    // Fortsätt leta - en senare förekomst kan vara ett ordprefix
+                    int wordPrefix = nextWordPrefix(i + 1, last, query);
+                    return wordPrefix >= 0 ? RANK_WORD_PREFIX : RANK_SUBSTRING;
+                }
+            }
+            return -1;
+        }
+
+        private int nextWordPrefix(int from, int last, char[] query) {
+            for (int i = from; i <= last; i++) {
+                if (!Character.isLetterOrDigit(text[i - 1]) && regionMatches(i, query)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private boolean regionMatches(int offset, char[] query) {
+            for (int k = 0; k < query.length; k++) {
+                if (text[offset + k] != query[k]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+
+    // Matchande dokument (stigande) med rang för varje
+    private static final class Matches {
+
+        private int[] docs;
+        private int[] ranks;
+        private int size;
+
+        Matches(int capacity) {
+            docs = new int[Math.max(capacity, 4)];
+            ranks = new int[docs.length];
+        }
+
+        void add(int doc, int rank) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                ranks = Arrays.copyOf(ranks, size * 2);
+            }
+            docs[size] = doc;
+            ranks[size] = rank;
+            size++;
+        }
+
+        // Dokument som finns i båda - bästa rangen vinner
+        Matches and(Matches other) {
+            Matches result = new Matches(Math.min(size, other.size));
+            int i = 0;
+            int j = 0;
+            while (i < size && j < other.size) {
+                if (docs[i] < other.docs[j]) {
+                    i++;
+                } else if (docs[i] > other.docs[j]) {
+                    j++;
+                } else {
+                    result.add(docs[i], Math.min(ranks[i], other.ranks[j]));
+                    i++;
+                    j++;
+                }
+            }
+            return result;
+        }
+
+        // Dokument som finns i någon av dem - bästa rangen vinner
+        Matches or(Matches other) {
+            Matches result = new Matches(size + other.size);
+            int i = 0;
+            int j = 0;
+            while (i < size || j < other.size) {
+                if (j >= other.size || (i < size && docs[i] < other.docs[j])) {
+                    result.add(docs[i], ranks[i]);
+                    i++;
+                } else if (i >= size || docs[i] > other.docs[j]) {
+                    result.add(other.docs[j], other.ranks[j]);
+                    j++;
+                } else {
+                    result.add(docs[i], Math.min(ranks[i], other.ranks[j]));
+                    i++;
+                    j++;
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.library_management_v2.service;
+
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Versionsnummer per tabell för HTTP conditional GET (ETag / If-None-Match)
+ *
+ * BookService och LoanService räknar upp versionen efter varje commit som ändrar böcker eller lån.
+ * Controllern bygger en ETag av versionen och svarar 304 Not Modified om klienten redan har den -
+ * utan att fråga databasen eller serialisera något.
+ *
+ * ETag:en innehåller även när appen startade, så att en omstart (räknarna börjar om på 0)
+ * aldrig ger samma ETag för annat innehåll. Ändringar som görs direkt i databasen
+ * (utanför appen) syns inte förrän nästa ändring via appen eller omstart.
+ */
+@Service
+public class CatalogueVersions {
+
+    private final String instance = Long.toString(System.currentTimeMillis(), 36);
+
+    private final AtomicLong books = new AtomicLong();
+    private final AtomicLong loans = new AtomicLong();
+
+
+    /**
+     * ETag för katalogen (/books, /books/search)
+     * @param variant Skiljer olika representationer av samma URL åt (t.ex. JSON och NDJSON)
+     */
+    public String booksETag(String variant) {
+        return "\"b-" + instance + "-" + books.get() + "-" + variant + "\"";
+    }
+
+
+    /**
+     * ETag för en användares lån (/{userId}/loans)
+     * Dagens datum ingår eftersom "overdue" räknas fram vid läsningen och ändras vid midnatt
+     */
+    public String loansETag() {
+        return "\"l-" + instance + "-" + loans.get() + "-" + LocalDate.now() + "\"";
+    }
+
+
+    // En bok har skapats eller fått ändrat antal tillgängliga exemplar
+    public void booksChanged() {
+        AfterCommit.run(books::incrementAndGet);
+    }
+
+
+    // Ett lån har skapats, återlämnats eller förlängts
+    public void loansChanged() {
+        AfterCommit.run(loans::incrementAndGet);
+    }
+}
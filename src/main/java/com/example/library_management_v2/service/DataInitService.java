@@ -1,5 +1,6 @@
 package com.example.library_management_v2.service;
 
+import com.example.library_management_v2.config.SQLiteWriter;
 import com.example.library_management_v2.entity.User;
 import com.example.library_management_v2.repository.UserRepository;
 import jakarta.annotation.PostConstruct;
@@ -7,6 +8,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDate;
+
 @Service
 public class DataInitService {
 
@@ -16,26 +19,38 @@ public class DataInitService {
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private SQLiteWriter sqliteWriter;
+
     @PostConstruct
     public void initData() {
         // Skapa testanvändare om de inte finns
+        // Skrivningarna går via SQLite-skrivtråden, BCrypt körs här
         if (userRepository.findByEmail("user@test.com").isEmpty()) {
-            User user = new User();
-            user.setEmail("user@test.com");
-            user.setPassword(passwordEncoder.encode("password123"));  // Kryptera lösenord
-            user.setRole("USER");
-            user.setEnabled(true);
-            userRepository.save(user);
+            String password = passwordEncoder.encode("password123");  // Kryptera lösenord
+            sqliteWriter.execute(() -> {
+                User user = new User();
+                user.setEmail("user@test.com");
+                user.setPassword(password);
+                user.setRegistrationDate(LocalDate.now().toString());
+                user.setRole("USER");
+                user.setEnabled(true);
+                return userRepository.save(user);
+            });
         }
 
         if (userRepository.findByEmail("admin@test.com").isEmpty()) {
-            User admin = new User();
-            admin.setEmail("admin@test.com");
             // passwordEncoder krypterar lösenordet och sparar den
-            admin.setPassword(passwordEncoder.encode("admin123"));
-            admin.setRole("ADMIN");
-            admin.setEnabled(true);
-            userRepository.save(admin);
+            String password = passwordEncoder.encode("admin123");
+            sqliteWriter.execute(() -> {
+                User admin = new User();
+                admin.setEmail("admin@test.com");
+                admin.setPassword(password);
+                admin.setRegistrationDate(LocalDate.now().toString());
+                admin.setRole("ADMIN");
+                admin.setEnabled(true);
+                return userRepository.save(admin);
+            });
         }
 
         System.out.println("✅ Testanvändare skapade:");
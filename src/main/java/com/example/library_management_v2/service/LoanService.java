@@ -3,8 +3,13 @@ package com.example.library_management_v2.service;
 
 // Vi skapar vi en service-klass för att hantera lånerelaterade operationer
 
+import com.example.library_management_v2.config.RetryOnBusy;
+import com.example.library_management_v2.config.SingleWriter;
+import com.example.library_management_v2.dto.CreateLoanBatchDTO;
 import com.example.library_management_v2.dto.CreateLoanDTO;
+import com.example.library_management_v2.dto.LoanBatchResultDTO;
 import com.example.library_management_v2.dto.LoanDTO;
+import com.example.library_management_v2.dto.ReturnLoanBatchDTO;
 import com.example.library_management_v2.entity.Book;
 import com.example.library_management_v2.entity.Loan;
 import com.example.library_management_v2.entity.User;
@@ -13,13 +18,20 @@ import com.example.library_management_v2.exception.BookNotFoundException;
 import com.example.library_management_v2.exception.UserNotFoundException;
 import com.example.library_management_v2.repository.BookRepository;
 import com.example.library_management_v2.repository.LoanRepository;
+import com.example.library_management_v2.repository.OverdueLoanRepository;
 import com.example.library_management_v2.repository.UserRepository;
 import jakarta.persistence.EntityNotFoundException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -31,29 +43,42 @@ public class LoanService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private OverdueLoanRepository overdueLoanRepository;
+
     @Autowired
     private BookRepository bookRepository;
 
+    @Autowired
+    private CatalogueCache catalogueCache;
+
+    @Autowired
+    private CatalogueVersions catalogueVersions;
+
+    @Autowired
+    private Environment env;
+
     // Hämta alla lån för en specifik user
+    // LoanDTO byggs direkt i SQL-frågan - inga Loan/Book/User-entiteter skapas för en läsning
+    @Transactional(readOnly = true)
     public List<LoanDTO> getUserLoans (Long userId) {
 
-        // Vi kontrollerar om användaren finns:
-        User user = userRepository.findById(userId).
-                orElseThrow(() -> new UserNotFoundException ("Användare med ID: " + userId + " hittades inte"));
-
-        // Hämta användarens lån
-        List<Loan> loans = loanRepository.findByUserId(userId);
+        // Hämta användarens lån (med boktitel och författarnamn i samma fråga)
+        List<LoanDTO> loans = loanRepository.findLoanDetailsByUserId(userId);
 
+        // Vi kontrollerar om användaren finns - behövs bara när inga lån hittades,
+        // annars bevisar lånen redan att användaren finns (sparar en SELECT)
+        if (loans.isEmpty() && !userRepository.existsById(userId)) {
+            throw new UserNotFoundException ("Användare med ID: " + userId + " hittades inte");
+        }
 
-        // Konvertera och returnera lån som DTO:
-        return loans.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        return loans;
     }
 
 
     // Vi behöver konvertera en Loan entity till LoanDTO med utökad information
-    private LoanDTO convertToDTO (Loan loan) {
+    // (package-private så att DtoMappingBenchmark kan mäta den)
+    LoanDTO convertToDTO (Loan loan) {
         LoanDTO dto = new LoanDTO();
         dto.setId(loan.getId());
         dto.setUserId(loan.getUser().getId());
@@ -97,8 +122,12 @@ public class LoanService {
      * Kasta UserNotFoundException om användaren inte hittas
      * Kasta BookNotFoundException om boken inte hittas
      * Kasta BookNotAvailableException om boken inte är tillgänglig
+     * Reservationen och lånet skrivs i samma transaktion (en commit) - misslyckas lånet
+     * rullas även reservationen tillbaka
      */
-
+    @SingleWriter
+    @Transactional
+    @RetryOnBusy
     public LoanDTO createLoan(CreateLoanDTO createLoanDTO) {
         // Hämta användare och bok
         User user = userRepository.findById(createLoanDTO.getUserId())
@@ -109,15 +138,20 @@ public class LoanService {
                 .orElseThrow(() -> new BookNotFoundException
                         ("Bok med ID: " + createLoanDTO.getBookId() + " hittades inte"));
 
-        // Kontrollera om boken är tillgänglig
+        // Kontrollera om boken är tillgänglig (snabbt nej utan att skriva något)
         if (book.getAvailableCopies() <= 0) {
             throw new BookNotAvailableException
                     ("Boken \"" + book.getTitle() + "\" är inte tillgänglig för närvarande");
         }
 
-        // Minska antalet tillgängliga exemplar
-        book.setAvailableCopies(book.getAvailableCopies() - 1);
-        bookRepository.save(book);
+        // Minska antalet tillgängliga exemplar atomiskt i databasen - läs-kontrollen ovan kan
+        // vara inaktuell om någon annan lånade samma bok samtidigt, så databasen avgör
+        if (bookRepository.reserveCopy(book.getId()) == 0) {
+            throw new BookNotAvailableException
+                    ("Boken \"" + book.getTitle() + "\" är inte tillgänglig för närvarande");
+        }
+        catalogueCache.bookChanged(book.getId());
+        catalogueVersions.booksChanged();
 
         // Skapa nytt lån
         Loan loan = new Loan();
@@ -137,6 +171,7 @@ public class LoanService {
 
         // Spara lånet
         Loan savedLoan = loanRepository.save(loan);
+        catalogueVersions.loansChanged();
 
         // Returnera det skapade lånet som DTO
         return convertToDTO(savedLoan);
@@ -150,6 +185,9 @@ public class LoanService {
      * Kasta en EntityNotFoundException om lånet inte hittas
      * Kasta en IllegalStateException om lånet redan är återlämnat
      */
+    @SingleWriter
+    @Transactional
+    @RetryOnBusy
     public LoanDTO returnBook(Long loanId) {
 
         // Hämta lånet
@@ -163,18 +201,21 @@ public class LoanService {
         }
 
 
-        // Markera lånet som återlämnat
+        // Markera lånet som återlämnat och spara det - före releaseCopy, som tömmer persistence context
         loan.setReturnedDate(LocalDate.now());
+        Loan savedLoan = loanRepository.save(loan);
 
 
-        // Öka antalet tillgängliga exemplar av boken
+        // Öka antalet tillgängliga exemplar av boken (i databasen, utan att skriva över samtidiga lån)
         Book book = loan.getBook();
-        book.setAvailableCopies(book.getAvailableCopies() + 1);
-        bookRepository.save(book);
+        bookRepository.releaseCopy(book.getId());
+        catalogueCache.bookChanged(book.getId());
+        catalogueVersions.booksChanged();
 
 
-        // Spara det uppdaterade lånet
-        Loan savedLoan = loanRepository.save(loan);
+        // Ett återlämnat lån är inte längre försenat
+        overdueLoanRepository.deleteByLoanIds(List.of(loanId));
+        catalogueVersions.loansChanged();
 
 
         // Returnera det uppdaterade lånet som DTO
@@ -189,6 +230,9 @@ public class LoanService {
      * Kasta EntityNotFoundException om lånet inte hittas
      * Kasta IllegalStateException om lånet redan är återlämnat eller förlängt
      */
+    @SingleWriter
+    @Transactional
+    @RetryOnBusy
     public LoanDTO extendLoan(Long loanId) {
         // Hämta lånet
         Loan loan = loanRepository.findById(loanId)
@@ -209,11 +253,147 @@ public class LoanService {
 
         // Spara det uppdaterade lånet
         Loan savedLoan = loanRepository.save(loan);
+        catalogueVersions.loansChanged();
+
+        // Med det nya förfallodatumet är lånet kanske inte försenat längre
+        if (!LocalDate.now().isAfter(savedLoan.getDueDate())) {
+            overdueLoanRepository.deleteByLoanIds(List.of(loanId));
+        }
 
         // Returnera det uppdaterade lånet som DTO
         return convertToDTO(savedLoan);
     }
 
 
+    /**
+     * Lånar flera böcker åt samma användare (självbetjäningsautomaten)
+     * Alla böcker hämtas i en SELECT, varje exemplar reserveras atomiskt (reserveCopy) och alla
+     * lån skrivs med en INSERT - allt i samma transaktion, alltså en commit för hela högen.
+     * Returnera ett resultat per bok-ID, i samma ordning som de skickades in. En bok som inte
+     * finns eller inte är tillgänglig stoppar inte resten.
+     * Kasta UserNotFoundException om användaren inte hittas (då lånas ingenting)
+     * Kasta IllegalArgumentException om fler böcker än library.loans.batch.max-size skickas
+     */
+    @SingleWriter
+    @Transactional
+    @RetryOnBusy
+    public List<LoanBatchResultDTO> createLoans(CreateLoanBatchDTO request) {
+        List<Long> bookIds = request.getBookIds();
+        checkBatchSize(bookIds.size());
+
+        if (!userRepository.existsById(request.getUserId())) {
+            throw new UserNotFoundException("Användare med ID: " + request.getUserId() + " hittades inte");
+        }
 
+        Map<Long, Book> books = new HashMap<>();
+        for (Book book : bookRepository.findByIdIn(bookIds)) {
+            books.put(book.getId(), book);
+        }
+
+        // Reservera ett exemplar per bok - misslyckade poster får sitt fel direkt
+        LoanBatchResultDTO[] results = new LoanBatchResultDTO[bookIds.size()];
+        Set<Long> reserved = new HashSet<>();
+        for (int i = 0; i < bookIds.size(); i++) {
+            Long bookId = bookIds.get(i);
+            Book book = books.get(bookId);
+
+            if (book == null) {
+                results[i] = LoanBatchResultDTO.failed(bookId, "Bok med ID: " + bookId + " hittades inte");
+            } else if (reserved.contains(bookId)) {
+                results[i] = LoanBatchResultDTO.failed(bookId, "Boken finns redan tidigare i samma förfrågan");
+            } else if (book.getAvailableCopies() <= 0 || bookRepository.reserveCopy(bookId) == 0) {
+                results[i] = LoanBatchResultDTO.failed(bookId,
+                        "Boken \"" + book.getTitle() + "\" är inte tillgänglig för närvarande");
+            } else {
+                reserved.add(bookId);
+                catalogueCache.bookChanged(bookId);
+            }
+        }
+
+        if (!reserved.isEmpty()) {
+            // Skrivlåset hålls redan (BEGIN IMMEDIATE), så alla lån med högre id är våra egna
+            long lastLoanId = loanRepository.findMaxId();
+            loanRepository.insertLoans(request.getUserId(), reserved, LocalDate.now(), LocalDate.now().plusDays(14));
+
+            Map<Long, LoanDTO> created = new HashMap<>();
+            for (LoanDTO loan : loanRepository.findLoanDetailsByUserIdAfter(request.getUserId(), lastLoanId)) {
+                created.put(loan.getBookId(), loan);
+            }
+            for (int i = 0; i < results.length; i++) {
+                if (results[i] == null) {
+                    results[i] = LoanBatchResultDTO.succeeded(bookIds.get(i), created.get(bookIds.get(i)));
+                }
+            }
+
+            catalogueVersions.booksChanged();
+            catalogueVersions.loansChanged();
+        }
+
+        return List.of(results);
+    }
+
+
+    /**
+     * Lämnar tillbaka flera lån på en gång
+     * Alla lån hämtas i en SELECT och uppdateringarna skickas som en JDBC-batch vid commit
+     * (hibernate.jdbc.batch_size). Exemplaren lämnas tillbaka med en UPDATE per antal
+     * exemplar per bok (releaseCopies) - normalt en enda - en transaktion och en commit för hela högen.
+     * Returnera ett resultat per lån-ID, i samma ordning som de skickades in
+     * Kasta IllegalArgumentException om fler lån än library.loans.batch.max-size skickas
+     */
+    @SingleWriter
+    @Transactional
+    @RetryOnBusy
+    public List<LoanBatchResultDTO> returnBooks(ReturnLoanBatchDTO request) {
+        List<Long> loanIds = request.getLoanIds();
+        checkBatchSize(loanIds.size());
+
+        Map<Long, Loan> loans = new HashMap<>();
+        for (Loan loan : loanRepository.findByIdIn(loanIds)) {
+            loans.put(loan.getId(), loan);
+        }
+
+        List<LoanBatchResultDTO> results = new ArrayList<>(loanIds.size());
+        List<Long> returned = new ArrayList<>();
+        Map<Long, Integer> releasedCopies = new HashMap<>();    // bok-ID -> antal återlämnade exemplar
+        for (Long loanId : loanIds) {
+            Loan loan = loans.get(loanId);
+
+            if (loan == null) {
+                results.add(LoanBatchResultDTO.failed(loanId, "Lån med ID: " + loanId + " hittades inte"));
+            } else if (loan.getReturnedDate() != null) {
+                results.add(LoanBatchResultDTO.failed(loanId,
+                        "Boken är redan återlämnad (datum: " + loan.getReturnedDate() + ")"));
+            } else {
+                // Ändringen skrivs vid commit (dirty checking) tillsammans med de andra lånen
+                loan.setReturnedDate(LocalDate.now());
+                releasedCopies.merge(loan.getBook().getId(), 1, Integer::sum);
+                catalogueCache.bookChanged(loan.getBook().getId());
+                returned.add(loanId);
+                results.add(LoanBatchResultDTO.succeeded(loanId, convertToDTO(loan)));
+            }
+        }
+
+        if (!returned.isEmpty()) {
+            // Gruppera böckerna på antal exemplar - en UPDATE ... WHERE id IN (...) per grupp
+            Map<Integer, List<Long>> booksByCount = new HashMap<>();
+            releasedCopies.forEach((bookId, count) ->
+                    booksByCount.computeIfAbsent(count, c -> new ArrayList<>()).add(bookId));
+            booksByCount.forEach((count, bookIds) -> bookRepository.releaseCopies(bookIds, count));
+
+            overdueLoanRepository.deleteByLoanIds(returned);
+            catalogueVersions.booksChanged();
+            catalogueVersions.loansChanged();
+        }
+
+        return results;
+    }
+
+
+    private void checkBatchSize(int size) {
+        int maxSize = env.getProperty("library.loans.batch.max-size", Integer.class, 50);
+        if (size > maxSize) {
+            throw new IllegalArgumentException("Högst " + maxSize + " poster per anrop (fick " + size + ")");
+        }
+    }
 }
@@ -0,0 +1,255 @@
+package com.example.library_management_v2.service;
+
+import com.example.library_management_v2.config.SQLiteWriter;
+import com.example.library_management_v2.dto.LoanDTO;
+import com.example.library_management_v2.dto.LoanPageDTO;
+import com.example.library_management_v2.repository.LoanRepository;
+import com.example.library_management_v2.repository.OverdueLoanRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hittar försenade lån i bakgrunden och sparar dem i overdue_loans (GET /admin/loans/overdue)
+ *
+ * Försening räknas annars bara fram vid läsning (LoanDTO), så att lista alla försenade lån
+ * skulle kräva att hela loans-tabellen läses. Här söks istället indexet
+ * idx_loans_returned_due (returned_date, due_date) igenom: aktiva lån med förfallodatum
+ * före idag.
+ *
+ * Genomsökningen är inkrementell: ett lån blir försenat när dagen efter förfallodatumet
+ * börjar, så efter första körningen räcker det att leta efter förfallodatum från förra
+ * körningens dag fram till idag. Första körningen efter start söker igenom alla aktiva lån.
+ *
+ * Träffarna läses i chunkar om library.overdue.chunk-size i read-only transaktioner och
+ * skrivs i en kort transaktion per chunk - skrivlåset hålls aldrig länge.
+ * LoanService tar bort raden när lånet återlämnas eller förlängs.
+ *
+ * Datumen i loans finns i två format (text från äldre rader, epoch-millisekunder från Hibernate),
+ * så mot SQLite söks båda intervallen. Indexet ger bara kandidater - om lånet verkligen är
+ * försenat avgörs av LoanDTO, precis som i resten av appen.
+ */
+@Service
+public class OverdueLoanService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OverdueLoanService.class);
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+
+    // SQLite: heltalsdatum (millisekunder) i första intervallet, textdatum i det andra - båda går via indexet
+    // Frågeplanen kontrolleras vid uppstart (SQLiteMigrations.JDBC_CHECKS)
+    public static final String CANDIDATES_SQLITE =
+            "SELECT loan_id FROM loans WHERE returned_date IS NULL "
+                    + "AND ((due_date >= ? AND due_date < ?) OR (due_date >= ? AND due_date < ?)) "
+                    + "AND loan_id > ? ORDER BY loan_id LIMIT ?";
+
+    private static final String CANDIDATES =
+            "SELECT loan_id FROM loans WHERE returned_date IS NULL "
+                    + "AND due_date >= ? AND due_date < ? "
+                    + "AND loan_id > ? ORDER BY loan_id LIMIT ?";
+
+    // Villkoret kontrolleras igen under skrivlåset - ett lån som hann återlämnas hoppas över
+    private static final String INSERT_OVERDUE =
+            "INSERT INTO overdue_loans (loan_id, detected_date) "
+                    + "SELECT l.loan_id, ? FROM loans l WHERE l.loan_id = ? AND l.returned_date IS NULL "
+                    + "AND NOT EXISTS (SELECT 1 FROM overdue_loans o WHERE o.loan_id = l.loan_id)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    @Autowired
+    private OverdueLoanRepository overdueLoanRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private SQLiteWriter sqliteWriter;
+
+    @Autowired
+    private Environment env;
+
+    private TransactionTemplate readOnlyTransaction;
+    private TransactionTemplate writeTransaction;
+
+    private boolean enabled;
+    private int chunkSize;
+    private Boolean sqlite;
+
+    // Förra genomsökningens dag - förfallodatum före den är redan kontrollerade (null = ingen körning än)
+    private LocalDate scannedUntil;
+
+    // En genomsökning åt gången (schemat och POST /admin/loans/overdue/scan)
+    private final ReentrantLock scanLock = new ReentrantLock();
+
+
+    @PostConstruct
+    public void init() {
+        enabled = env.getProperty("library.overdue.scan.enabled", Boolean.class, true);
+        chunkSize = env.getProperty("library.overdue.chunk-size", Integer.class, 500);
+
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        writeTransaction = new TransactionTemplate(transactionManager);
+    }
+
+
+    // Körs library.overdue.scan-interval-ms efter att förra körningen blev klar
+    @Scheduled(fixedDelayString = "${library.overdue.scan-interval-ms:3600000}",
+            initialDelayString = "${library.overdue.initial-delay-ms:10000}")
+    public void scheduledScan() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            scan();
+        } catch (Exception e) {
+            // Nästa körning försöker igen från samma dag (scannedUntil flyttas bara när allt gick bra)
+            logger.warn("Genomsökning av försenade lån misslyckades: {}", e.getMessage());
+        }
+    }
+
+
+    /**
+     * Leta upp lån som blivit försenade sedan förra körningen och spara dem i overdue_loans
+     * @return Antal nya försenade lån
+     */
+    public int scan() {
+        // ReentrantLock istället för synchronized: en virtuell tråd som väntar i JDBC inuti
+        // synchronized låser fast sin bärartråd (spring.threads.virtual.enabled)
+        scanLock.lock();
+        try {
+            LocalDate today = LocalDate.now();
+            LocalDate from = scannedUntil;
+            if (from != null && !from.isBefore(today)) {
+                return 0;   // Redan genomsökt idag - inga nya lån kan ha blivit försenade
+            }
+
+            long start = System.currentTimeMillis();
+            int found = 0;
+            long afterId = 0;
+            while (true) {
+                long chunkAfter = afterId;
+                List<Long> overdue = new ArrayList<>();
+                List<Long> candidates = readOnlyTransaction.execute(status -> {
+                    List<Long> ids = findCandidates(from, today, chunkAfter);
+                    if (!ids.isEmpty()) {
+                        for (LoanDTO loan : loanRepository.findLoanDetailsByIds(ids)) {
+                            if (loan.isOverdue()) {
+                                overdue.add(loan.getId());
+                            }
+                        }
+                    }
+                    return ids;
+                });
+
+                if (!overdue.isEmpty()) {
+                    found += record(overdue, today);
+                }
+                if (candidates.size() < chunkSize) {
+                    break;
+                }
+                afterId = candidates.get(candidates.size() - 1);
+            }
+
+            scannedUntil = today;
+            logger.info("Försenade lån: {} nya (förfallodatum {} - {}), {} ms",
+                    found, from != null ? from : "alla", today.minusDays(1), System.currentTimeMillis() - start);
+            return found;
+        } finally {
+            scanLock.unlock();
+        }
+    }
+
+
+    // Nästa chunk med aktiva lån som förföll i [from, today), sorterade på id
+    private List<Long> findCandidates(LocalDate from, LocalDate today, long afterId) {
+        Date fromDate = Date.valueOf(from != null ? from : LocalDate.of(1, 1, 1));
+        Date toDate = Date.valueOf(today);
+
+        if (isSQLite()) {
+            return jdbcTemplate.queryForList(CANDIDATES_SQLITE, Long.class,
+                    fromDate, toDate, from != null ? from.toString() : "", today.toString(), afterId, chunkSize);
+        }
+        return jdbcTemplate.queryForList(CANDIDATES, Long.class, fromDate, toDate, afterId, chunkSize);
+    }
+
+
+    // Spara en chunk i en egen kort transaktion på skrivtråden
+    private int record(List<Long> loanIds, LocalDate today) {
+        Date detected = Date.valueOf(today);
+        List<Object[]> rows = new ArrayList<>(loanIds.size());
+        for (Long loanId : loanIds) {
+            rows.add(new Object[]{detected, loanId});
+        }
+
+        int[][] counts = sqliteWriter.execute(() -> writeTransaction.execute(status ->
+                jdbcTemplate.batchUpdate(INSERT_OVERDUE, rows, rows.size(), (ps, row) -> {
+                    ps.setDate(1, (Date) row[0]);
+                    ps.setLong(2, (Long) row[1]);
+                })));
+
+        int inserted = 0;
+        for (int[] batch : counts) {
+            for (int count : batch) {
+                inserted += Math.max(count, 0);
+            }
+        }
+        return inserted;
+    }
+
+
+    /**
+     * En sida med försenade lån (keyset-paginering på lån-id)
+     * @param afterId Sista id från föregående sida (null = första sidan)
+     * @param size Antal lån per sida (begränsas till 1..MAX_PAGE_SIZE)
+     */
+    @Transactional(readOnly = true)
+    public LoanPageDTO getOverdueLoans(Long afterId, int size) {
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+
+        // Hämta en rad extra - finns den så finns det en nästa sida
+        List<LoanDTO> loans = overdueLoanRepository.findOverdueLoanDetails(
+                afterId != null ? afterId : 0L, Limit.of(pageSize + 1));
+
+        boolean hasMore = loans.size() > pageSize;
+        if (hasMore) {
+            loans = loans.subList(0, pageSize);
+        }
+        return new LoanPageDTO(loans, hasMore ? loans.get(loans.size() - 1).getId() : null);
+    }
+
+
+    private boolean isSQLite() {
+        if (sqlite == null) {
+            try {
+                String product = jdbcTemplate.execute((ConnectionCallback<String>)
+                        connection -> connection.getMetaData().getDatabaseProductName());
+                sqlite = "SQLite".equalsIgnoreCase(product);
+            } catch (Exception e) {
+                return false;
+            }
+        }
+        return sqlite;
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.library_management_v2.service;
 
+import com.example.library_management_v2.config.SingleWriter;
 import com.example.library_management_v2.entity.RefreshToken;
 import com.example.library_management_v2.entity.User;
 import com.example.library_management_v2.repository.RefreshTokenRepository;
@@ -17,6 +18,7 @@ import java.util.UUID;
 // - Skapande av nya refresh tokens
 // - Validering av befintliga refresh tokens
 // - Borttagning av utgångna tokens
+// Metoder som skriver går via SQLite-skrivtråden (@SingleWriter), läsningar via read-only-poolen
 
 @Service
 @Transactional
@@ -33,6 +35,7 @@ public class RefreshTokenService {
 
 
     // Skapa en ny refresh token för användaren
+    @SingleWriter
     public RefreshToken createRefreshToken(Long userId) {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("Användare hittades inte med ID: " + userId));
@@ -53,12 +56,14 @@ public class RefreshTokenService {
     }
 
 
+    @Transactional(readOnly = true)
     public Optional<RefreshToken> findByToken(String token) {
         return refreshTokenRepository.findByToken(token);
     }
 
 
     // Verifiera att en refresh token är giltig
+    @SingleWriter
     public RefreshToken verifyExpiration(RefreshToken token) {
         if (token.isExpired()) {
             refreshTokenRepository.delete(token);
@@ -69,6 +74,7 @@ public class RefreshTokenService {
 
 
     // Ta bort refresh token för en användare (vid utloggning)
+    @SingleWriter
     public void deleteByUserId(Long userId) {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("Användare hittades inte med ID: " + userId));
@@ -78,6 +84,7 @@ public class RefreshTokenService {
 
 
     // Rensa alla utgångna refresh tokens från databasen
+    @SingleWriter
     public void deleteExpiredTokens() {
         String now = LocalDateTime.now().toString();
         refreshTokenRepository.deleteExpiredTokens(now);
@@ -85,6 +92,7 @@ public class RefreshTokenService {
 
 
     // Förnya refresh token (skapa ny med samma användare)
+    @SingleWriter
     public RefreshToken renewRefreshToken(RefreshToken oldToken) {
         // Verifiera att det gamla token inte är utgånget
         verifyExpiration(oldToken);
@@ -0,0 +1,76 @@
+package com.example.library_management_v2.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Cache för UserDetails, nyckel = email.
+ *
+ * JwtAuthenticationFilter behöver användarens roller på varje request. Utan cache
+ * blir det en findByEmail-fråga mot databasen per API-anrop.
+ *
+ * Cachen är begränsad i storlek och varje post lever max library.security.user-cache.ttl-seconds.
+ * Poster tas bort direkt när en användare uppdateras (roll, enabled m.m.) och vid utloggning.
+ * Hit/miss-statistik finns under /actuator/metrics/cache.gets?tag=cache:userDetails
+ */
+@Service
+public class UserDetailsCache {
+
+    @Autowired
+    private Environment env;
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    private Cache<String, UserDetails> cache;
+
+    private boolean enabled;
+
+
+    @PostConstruct
+    public void init() {
+        enabled = env.getProperty("library.security.user-cache.enabled", Boolean.class, true);
+
+        cache = Caffeine.newBuilder()
+                .maximumSize(env.getProperty("library.security.user-cache.max-size", Long.class, 10000L))
+                .expireAfterWrite(Duration.ofSeconds(
+                        env.getProperty("library.security.user-cache.ttl-seconds", Long.class, 300L)))
+                .recordStats()
+                .build();
+
+        meterRegistry.ifAvailable(registry -> CaffeineCacheMetrics.monitor(registry, cache, "userDetails"));
+    }
+
+
+    // Hämta från cachen, eller ladda via loader (t.ex. UserDetailsServiceImpl) vid miss
+    public UserDetails get(String email, Function<String, UserDetails> loader) {
+        if (!enabled) {
+            return loader.apply(email);
+        }
+        return cache.get(email, loader);
+    }
+
+
+    // Ta bort en användare ur cachen (vid ändrad roll/status eller utloggning)
+    public void evict(String email) {
+        if (email != null) {
+            cache.invalidate(email);
+        }
+    }
+
+
+    public void evictAll() {
+        cache.invalidateAll();
+    }
+}
@@ -1,9 +1,13 @@
 package com.example.library_management_v2.service;
 
+import com.example.library_management_v2.config.SQLiteWriter;
 import com.example.library_management_v2.entity.User;
 import com.example.library_management_v2.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
@@ -11,11 +15,19 @@ import org.springframework.transaction.annotation.Transactional;
 
 
 @Service
-public class UserDetailsServiceImpl implements UserDetailsService {
+public class UserDetailsServiceImpl implements UserDetailsService, UserDetailsPasswordService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserDetailsServiceImpl.class);
 
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserDetailsCache userDetailsCache;
+
+    @Autowired
+    private SQLiteWriter sqliteWriter;
+
 
     @Override
     @Transactional(readOnly = true)
@@ -33,6 +45,23 @@ public class UserDetailsServiceImpl implements UserDetailsService {
                 .disabled(!user.isEnabled())                // Invertera enabled för disabled
                 .build();
     }
-}
 
 
+    // Anropas av DaoAuthenticationProvider efter en lyckad inloggning när den sparade hashen har
+    // gammalt format eller lägre styrka än PasswordConfig - newPassword är redan hashad på nytt
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        try {
+            sqliteWriter.execute(() -> userRepository.updatePassword(user.getUsername(), newPassword));
+            userDetailsCache.evict(user.getUsername());
+        } catch (RuntimeException e) {
+            // Inloggningen ska lyckas ändå - hashen uppgraderas nästa gång
+            logger.warn("Kunde inte uppgradera lösenordshashen för {}: {}", user.getUsername(), e.getMessage());
+            return user;
+        }
+
+        return org.springframework.security.core.userdetails.User.withUserDetails(user)
+                .password(newPassword)
+                .build();
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.library_management_v2.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+
+/**
+ * Kortlivad spärrlista för access tokens.
+ *
+ * När JwtAuthenticationFilter litar på claims i token (library.security.jwt.trust-claims=true)
+ * frågas inte databasen på varje request. En användare som stängs av eller loggar ut
+ * skulle då kunna fortsätta använda sin token tills den går ut.
+ *
+ * Därför sparas tidpunkten för spärren per email i millisekunder, och jämförs med tokens
+ * utfärdandetid i millisekunder (claimen JwtUtil.ISSUED_AT_MILLIS - iat har bara
+ * sekundprecision, och en token från samma sekund som spärren men före den hade annars
+ * släppts igenom). Alla tokens utfärdade till och med spärrens millisekund nekas. Posten
+ * behöver bara leva lika länge som en access token, efter det har alla gamla tokens ändå gått ut.
+ */
+@Service
+public class UserRevocationList {
+
+    // Samma livslängd som access tokens i JwtUtil (15 minuter)
+    private static final Duration ENTRY_LIFETIME = Duration.ofMinutes(15);
+
+    // email -> spärrens tidpunkt i millisekunder sedan epoch
+    private final Cache<String, Long> revokedAt = Caffeine.newBuilder()
+            .expireAfterWrite(ENTRY_LIFETIME)
+            .build();
+
+
+    // Spärra alla tokens som hittills utfärdats för användaren
+    public void revoke(String email) {
+        if (email != null) {
+            revokedAt.put(email, System.currentTimeMillis());
+        }
+    }
+
+
+    // Är en token utfärdad vid issuedAtMillis spärrad för denna användare?
+    public boolean isRevoked(String email, Long issuedAtMillis) {
+        Long revokedMillis = revokedAt.getIfPresent(email);
+        if (revokedMillis == null) {
+            return false;
+        }
+
+        // Token saknar utfärdandetid - vi kan inte veta när den skapades, neka för säkerhets skull
+        if (issuedAtMillis == null) {
+            return true;
+        }
+
+        // Samma millisekund som spärren kan vara före den - neka även den
+        return issuedAtMillis <= revokedMillis;
+    }
+}
@@ -1,9 +1,11 @@
 package com.example.library_management_v2.service;
 
+import com.example.library_management_v2.config.SQLiteWriter;
 import com.example.library_management_v2.dto.CreateUserDTO;
 import com.example.library_management_v2.dto.UserDTO;
 import com.example.library_management_v2.entity.User;
 import com.example.library_management_v2.exception.DuplicateUserException;
+import com.example.library_management_v2.exception.PasswordHashingBusyException;
 import com.example.library_management_v2.exception.UserNotFoundException;
 import com.example.library_management_v2.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -26,6 +28,9 @@ public class UserService {
     @Autowired
     private SecurityLoggingService securityLoggingService;
 
+    @Autowired
+    private SQLiteWriter sqliteWriter;
+
 
     public UserDTO getUserByEmail (String email) {
         User user = userRepository.findByEmail(email)
@@ -65,18 +70,23 @@ public class UserService {
                         ("En användare med e-postadressen " + createUserDTO.getEmail() + " finns redan");
             }
 
-            // Skapa ny användarentitet
-            User user = new User();
-            user.setFirstName(createUserDTO.getFirstName());
-            user.setLastName(createUserDTO.getLastName());
-            user.setEmail(createUserDTO.getEmail());
-            user.setPassword(passwordEncoder.encode(createUserDTO.getPassword()));
-            user.setRegistrationDate(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
-            user.setRole("ROLE_USER");
-            user.setEnabled(true);
-
-            // Spara användaren
-            User savedUser = userRepository.save(user);
+            // BCrypt körs här - bara själva INSERT:en går via skrivtråden
+            String passwordHash = passwordEncoder.encode(createUserDTO.getPassword());
+            String registrationDate = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+
+            // Entiteten skapas inuti skrivningen, så att ett omförsök alltid börjar med en ny entitet
+            User savedUser = sqliteWriter.execute(() -> {
+                // Skapa ny användarentitet
+                User user = new User();
+                user.setFirstName(createUserDTO.getFirstName());
+                user.setLastName(createUserDTO.getLastName());
+                user.setEmail(createUserDTO.getEmail());
+                user.setPassword(passwordHash);
+                user.setRegistrationDate(registrationDate);
+                user.setRole("ROLE_USER");
+                user.setEnabled(true);
+                return userRepository.save(user);
+            });
 
             // SÄKERHETSLOGGNING: Logga lyckad registrering
             securityLoggingService.logUserRegistration(createUserDTO.getEmail());
@@ -84,7 +94,7 @@ public class UserService {
 
             return convertToDTO(savedUser);
 
-        } catch (DuplicateUserException e) {
+        } catch (DuplicateUserException | PasswordHashingBusyException e) {
             throw e;
         } catch (Exception e) {
             securityLoggingService.logSecurityIncident("REGISTRATION_ERROR",
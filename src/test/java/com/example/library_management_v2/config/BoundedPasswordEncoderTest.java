@@ -0,0 +1,107 @@
+package com.example.library_management_v2.config;
+
+import com.example.library_management_v2.exception.PasswordHashingBusyException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Begränsad lösenordshashning: en tråd, en plats i kön - nästa anrop avvisas direkt
+
+public class BoundedPasswordEncoderTest {
+
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private SimpleMeterRegistry registry;
+    private BoundedPasswordEncoder encoder;
+    private ExecutorService callers;
+
+
+    @BeforeEach
+    public void setUp() {
+        // BCrypt med lägsta styrkan - första anropet med "blockera" håller hashtråden upptagen
+        PasswordEncoder bcrypt = new BCryptPasswordEncoder(4) {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                if ("blockera".contentEquals(rawPassword)) {
+                    started.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.encode(rawPassword);
+            }
+        };
+
+        registry = new SimpleMeterRegistry();
+        encoder = new BoundedPasswordEncoder(bcrypt, 1, 1, 2);
+        encoder.registerMetrics(registry);
+        callers = Executors.newFixedThreadPool(2);
+    }
+
+
+    @AfterEach
+    public void tearDown() {
+        release.countDown();
+        callers.shutdownNow();
+        encoder.close();
+    }
+
+
+    @Test
+    @DisplayName("Hash och verifiering ska fungera som vanlig BCrypt")
+    public void testEncodeAndMatches() {
+        String hash = encoder.encode("hemligt123");
+
+        assertTrue(encoder.matches("hemligt123", hash));
+        assertFalse(encoder.matches("fel", hash));
+        assertEquals(1, registry.get("library.security.password.hash").tag("operation", "encode").timer().count());
+        assertEquals(2, registry.get("library.security.password.hash").tag("operation", "matches").timer().count());
+    }
+
+
+    @Test
+    @DisplayName("Full kö ska avvisas direkt med Retry-After istället för att vänta")
+    public void testFullQueue_RejectsImmediately() throws Exception {
+        Future<String> running = callers.submit(() -> encoder.encode("blockera"));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        Future<String> queued = callers.submit(() -> encoder.encode("i kön"));
+        waitForQueue(1);
+
+        PasswordHashingBusyException e = assertThrows(PasswordHashingBusyException.class,
+                () -> encoder.matches("avvisas", "$2a$04$abcdefghijklmnopqrstuv"));
+        assertEquals(2, e.getRetryAfterSeconds());
+        assertEquals(1, registry.get("library.security.password.rejected").counter().count());
+
+        // Det som redan var antaget körs klart
+        release.countDown();
+        assertNotNull(running.get(10, TimeUnit.SECONDS));
+        assertNotNull(queued.get(10, TimeUnit.SECONDS));
+    }
+
+
+    private void waitForQueue(int size) throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            if (registry.get("library.security.password.queue.size").gauge().value() == size) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        fail("Kön fick aldrig " + size + " hashningar");
+    }
+}
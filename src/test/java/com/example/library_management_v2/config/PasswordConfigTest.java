@@ -0,0 +1,52 @@
+package com.example.library_management_v2.config;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Lösenordshashar med id-prefix och konfigurerbar styrka - äldre/svagare hashar ska uppgraderas
+
+@SpringJUnitConfig(PasswordConfig.class)
+@TestPropertySource(properties = "library.security.password-hashing.bcrypt-strength=5")
+public class PasswordConfigTest {
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+
+    @Test
+    @DisplayName("Nya hashar ska få {bcrypt}-prefix och inställd styrka - och inte behöva uppgraderas")
+    public void testEncode_UsesConfiguredStrength() {
+        String hash = passwordEncoder.encode("hemligt123");
+
+        assertTrue(hash.startsWith("{bcrypt}$2a$05$"), hash);
+        assertTrue(passwordEncoder.matches("hemligt123", hash));
+        assertFalse(passwordEncoder.upgradeEncoding(hash));
+    }
+
+
+    @Test
+    @DisplayName("Gamla hashar utan prefix och svagare hashar ska fungera men uppgraderas")
+    public void testLegacyAndWeakerHashes_MatchButNeedUpgrade() {
+        String legacy = BCrypt.hashpw("hemligt123", BCrypt.gensalt(5));
+        String weaker = "{bcrypt}" + BCrypt.hashpw("hemligt123", BCrypt.gensalt(4));
+
+        assertTrue(passwordEncoder.matches("hemligt123", legacy));
+        assertTrue(passwordEncoder.upgradeEncoding(legacy));
+        assertTrue(passwordEncoder.matches("hemligt123", weaker));
+        assertTrue(passwordEncoder.upgradeEncoding(weaker));
+    }
+
+
+    @Test
+    @DisplayName("Kalibreringen ska aldrig välja lägre än min-strength")
+    public void testCalibration_NeverBelowMinimum() {
+        assertEquals(6, BCryptCalibration.chooseStrength(0, 6));
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.library_management_v2.config;
+
+import com.example.library_management_v2.exception.PasswordHashingBusyException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Inloggning med en hash som ska uppgraderas, när hashningskön är full just vid uppgraderingen
+
+public class PasswordUpgradingAuthenticationProviderTest {
+
+    @Test
+    @DisplayName("Full hashningskö vid uppgraderingen ska inte stoppa en verifierad inloggning")
+    public void testAuthenticate_SkipsUpgradeWhenBusy() {
+        // Verifieringen fungerar, men omhashningen av lösenordet avvisas och alla hashar "behöver" uppgraderas
+        // (andra lösenord är providerns eget skydd mot timing-attacker, det hashas som vanligt)
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(4) {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                if ("hemligt123".contentEquals(rawPassword)) {
+                    throw new PasswordHashingBusyException("Kön är full", 1);
+                }
+                return super.encode(rawPassword);
+            }
+
+            @Override
+            public boolean upgradeEncoding(String encodedPassword) {
+                return true;
+            }
+        };
+        String hash = new BCryptPasswordEncoder(4).encode("hemligt123");
+        UserDetails user = User.withUsername("user@test.com").password(hash).roles("USER").build();
+
+        AtomicInteger upgrades = new AtomicInteger();
+        PasswordUpgradingAuthenticationProvider provider = new PasswordUpgradingAuthenticationProvider();
+        provider.setUserDetailsService(new InMemoryUserDetailsManager(user));
+        provider.setPasswordEncoder(encoder);
+        provider.setUserDetailsPasswordService((details, newPassword) -> {
+            upgrades.incrementAndGet();
+            return details;
+        });
+
+        Authentication result = provider.authenticate(
+                UsernamePasswordAuthenticationToken.unauthenticated("user@test.com", "hemligt123"));
+
+        assertTrue(result.isAuthenticated());
+        assertEquals("user@test.com", result.getName());
+        assertTrue(result.getAuthorities().stream().anyMatch(a -> a.getAuthority().equals("ROLE_USER")));
+        assertEquals(0, upgrades.get());
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.library_management_v2.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.sqlite.SQLiteErrorCode;
+import org.sqlite.SQLiteException;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Omförsök vid SQLITE_BUSY: rätt antal försök, metrics, och inga omförsök för andra fel
+
+public class SQLiteBusyRetryAspectTest {
+
+    private MeterRegistry registry;
+    private Workflow target;
+    private Workflow workflow;     // Proxy med aspekten runt target
+
+
+    // Låtsas-workflow som är upptagen de första busyAttempts gångerna
+    public static class Workflow {
+        int calls;
+        int busyAttempts;
+
+        @RetryOnBusy
+        public String run() {
+            calls++;
+            if (calls <= busyAttempts) {
+                throw new RuntimeException("commit misslyckades",
+                        new SQLiteException("database is locked", SQLiteErrorCode.SQLITE_BUSY));
+            }
+            return "klart";
+        }
+
+        @RetryOnBusy
+        public String fail() {
+            calls++;
+            throw new IllegalStateException("Lånet har redan förlängts en gång");
+        }
+    }
+
+
+    @BeforeEach
+    public void setUp() {
+        registry = new SimpleMeterRegistry();
+
+        SQLiteBusyRetryAspect aspect = new SQLiteBusyRetryAspect();
+        ReflectionTestUtils.setField(aspect, "env", new MockEnvironment()
+                .withProperty("library.sqlite.busy-retry.max-attempts", "3")
+                .withProperty("library.sqlite.busy-retry.initial-backoff-ms", "1"));
+        ReflectionTestUtils.setField(aspect, "meterRegistry",
+                new StaticListableBeanFactory(Map.of("registry", registry)).getBeanProvider(MeterRegistry.class));
+        aspect.init();
+
+        target = new Workflow();
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(aspect);
+        workflow = factory.getProxy();
+    }
+
+
+    @Test
+    @DisplayName("SQLITE_BUSY ska ge omförsök tills det lyckas")
+    public void testRetriesUntilSuccess() {
+        target.busyAttempts = 2;
+
+        assertEquals("klart", workflow.run());
+        assertEquals(3, target.calls);
+        assertEquals(2.0, registry.counter("library.sqlite.busy.retries", "method", "Workflow.run").count());
+        assertEquals(2, registry.timer("library.sqlite.busy.wait", "method", "Workflow.run").count());
+    }
+
+
+    @Test
+    @DisplayName("Efter max-attempts ska felet kastas vidare")
+    public void testGivesUpAfterMaxAttempts() {
+        target.busyAttempts = 10;
+
+        assertThrows(RuntimeException.class, () -> workflow.run());
+        assertEquals(3, target.calls);
+        assertEquals(1.0, registry.counter("library.sqlite.busy.exhausted", "method", "Workflow.run").count());
+    }
+
+
+    @Test
+    @DisplayName("Andra fel än SQLITE_BUSY ska inte köras om")
+    public void testNoRetryForOtherErrors() {
+        assertThrows(IllegalStateException.class, () -> workflow.fail());
+        assertEquals(1, target.calls);
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.library_management_v2.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AssignableTypeFilter;
+import org.springframework.data.repository.Repository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.sqlite.SQLiteDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Migreringarna körs mot en tom fil med grundschemat (som i libraryWithRole.db):
+// en gång per version, och med index för alla uppslagningar - och frågeplanskontrollen täcker alla repository-metoder
+
+public class SQLiteMigrationsTest {
+
+    // Tabellerna som de ser ut i databasfilen innan någon migrering har körts
+    private static final List<String> BASELINE = List.of(
+            "CREATE TABLE authors (author_id INTEGER PRIMARY KEY AUTOINCREMENT, first_name VARCHAR(100) NOT NULL, "
+                    + "last_name VARCHAR(100) NOT NULL, birth_year INTEGER, nationality VARCHAR(100))",
+            "CREATE TABLE books (book_id INTEGER PRIMARY KEY AUTOINCREMENT, title VARCHAR(200) NOT NULL, "
+                    + "publication_year INTEGER, available_copies INTEGER DEFAULT 1, total_copies INTEGER DEFAULT 1, "
+                    + "author_id INTEGER REFERENCES authors(author_id) ON DELETE SET NULL)",
+            "CREATE TABLE users (user_id INTEGER PRIMARY KEY AUTOINCREMENT, first_name VARCHAR(100) NOT NULL, "
+                    + "last_name VARCHAR(100) NOT NULL, email VARCHAR(150) UNIQUE NOT NULL, password VARCHAR(255) NOT NULL, "
+                    + "role TEXT DEFAULT ROLE_USER, enabled BOOLEAN DEFAULT (1), registration_date DATETIME)",
+            "CREATE TABLE loans (loan_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + "user_id INTEGER NOT NULL REFERENCES users(user_id), book_id INTEGER NOT NULL REFERENCES books(book_id), "
+                    + "borrowed_date DATETIME NOT NULL, due_date DATETIME NOT NULL, returned_date DATETIME)",
+            "CREATE TABLE refresh_tokens (id INTEGER PRIMARY KEY AUTOINCREMENT, token TEXT UNIQUE NOT NULL, "
+                    + "expiry_date TEXT NOT NULL, user_id INTEGER NOT NULL REFERENCES users(user_id) ON DELETE CASCADE)"
+    );
+
+    @TempDir
+    Path tempDir;
+
+    private JdbcTemplate jdbcTemplate;
+    private SQLiteMigrations migrations;
+
+
+    @BeforeEach
+    public void setUp() {
+        SQLiteDataSource dataSource = new SQLiteDataSource();
+        dataSource.setUrl("jdbc:sqlite:" + tempDir.resolve("library.db"));
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        BASELINE.forEach(jdbcTemplate::execute);
+        migrations = migrations(jdbcTemplate, dataSource);
+    }
+
+
+    // Grundschemat plus alla migreringar - för andra tester som behöver en riktig SQLite-fil
+    public static void migrate(JdbcTemplate jdbcTemplate, DataSource dataSource) {
+        BASELINE.forEach(jdbcTemplate::execute);
+        migrations(jdbcTemplate, dataSource).migrate();
+    }
+
+
+    private static SQLiteMigrations migrations(JdbcTemplate jdbcTemplate, DataSource dataSource) {
+        SQLiteMigrations migrations = new SQLiteMigrations();
+        ReflectionTestUtils.setField(migrations, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(migrations, "transactionManager", new DataSourceTransactionManager(dataSource));
+        // Repositorierna finns inte här - frågeplanerna kontrolleras med verifyQueryPlans(checks)
+        ReflectionTestUtils.setField(migrations, "env", new MockEnvironment()
+                .withProperty("library.sqlite.migrations.verify-query-plans", "false"));
+        return migrations;
+    }
+
+
+    @Test
+    @DisplayName("Alla migreringar ska köras en gång och sparas i schema_version")
+    public void testMigrate_AppliesEachVersionOnce() {
+        migrations.apply();
+        migrations.apply();     // Andra uppstarten - inget att göra
+
+        List<Integer> versions = jdbcTemplate.queryForList(
+                "SELECT version FROM schema_version ORDER BY version", Integer.class);
+        assertEquals(SQLiteMigrations.MIGRATIONS.size(), versions.size());
+        assertEquals(SQLiteMigrations.MIGRATIONS.get(SQLiteMigrations.MIGRATIONS.size() - 1).version(),
+                versions.get(versions.size() - 1));
+
+        List<String> indexes = jdbcTemplate.queryForList(
+                "SELECT name FROM sqlite_master WHERE type = 'index'", String.class);
+        assertTrue(indexes.containsAll(List.of("idx_loans_user_id", "idx_loans_book_id", "idx_books_author_id",
+                "idx_loans_returned_due", "idx_refresh_tokens_user_id")));
+        assertTrue(jdbcTemplate.queryForList("SELECT name FROM pragma_table_info('books')", String.class)
+                .contains("version"));
+        assertTrue(jdbcTemplate.queryForList("SELECT name FROM sqlite_master WHERE type = 'trigger'", String.class)
+                .containsAll(List.of("books_fts_after_insert", "books_fts_after_update", "books_fts_after_delete",
+                        "authors_fts_after_update")));
+    }
+
+
+    @Test
+    @DisplayName("En uppslagning som läser hela tabellen ska stoppa uppstarten")
+    public void testVerifyQueryPlans_FailsOnTableScan() {
+        migrations.migrate();
+        migrations.verifyQueryPlans(SQLiteMigrations.JDBC_CHECKS);
+        jdbcTemplate.execute("DROP INDEX idx_loans_user_id");
+
+        // Som Hibernates SQL för LoanRepository.findLoanDetailsByUserId
+        List<SQLiteMigrations.PlanCheck> checks = List.of(new SQLiteMigrations.PlanCheck(
+                "LoanRepository.findLoanDetailsByUserId",
+                "select l1_0.loan_id from loans l1_0 join books b1_0 on b1_0.book_id=l1_0.book_id "
+                        + "left join authors a1_0 on a1_0.author_id=b1_0.author_id "
+                        + "where l1_0.user_id=? order by l1_0.loan_id"));
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> migrations.verifyQueryPlans(checks));
+        assertTrue(e.getMessage().contains("LoanRepository.findLoanDetailsByUserId"), e.getMessage());
+    }
+
+
+    @Test
+    @DisplayName("Varje repository-metod ska ha en frågeplanskontroll eller stå bland de avsiktliga tabellskanningarna")
+    public void testProbes_CoverEveryRepositoryMethod() throws ClassNotFoundException {
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false) {
+            @Override
+            protected boolean isCandidateComponent(AnnotatedBeanDefinition definition) {
+                return definition.getMetadata().isInterface();
+            }
+        };
+        scanner.addIncludeFilter(new AssignableTypeFilter(Repository.class));
+
+        Set<String> methods = new TreeSet<>();
+        for (BeanDefinition definition : scanner.findCandidateComponents("com.example.library_management_v2.repository")) {
+            Class<?> repository = Class.forName(definition.getBeanClassName());
+            for (Method method : repository.getDeclaredMethods()) {
+                if (!method.isSynthetic() && !Modifier.isStatic(method.getModifiers())) {
+                    methods.add(repository.getSimpleName() + "." + method.getName());
+                }
+            }
+        }
+
+        Set<String> probed = new TreeSet<>();
+        SQLiteMigrations.PROBES.forEach(probe -> probed.add(probe.name()));
+        Set<String> covered = new TreeSet<>(probed);
+        covered.addAll(SQLiteMigrations.INTENTIONAL_SCANS.keySet());
+
+        assertEquals(methods, covered);
+        assertTrue(Collections.disjoint(probed, SQLiteMigrations.INTENTIONAL_SCANS.keySet()));
+    }
+}
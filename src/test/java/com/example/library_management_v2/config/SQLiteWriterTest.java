@@ -0,0 +1,310 @@
+package com.example.library_management_v2.config;
+
+import com.example.library_management_v2.dto.BookDTO;
+import com.example.library_management_v2.dto.CreateUserDTO;
+import com.example.library_management_v2.dto.UserDTO;
+import com.example.library_management_v2.entity.Author;
+import com.example.library_management_v2.repository.AuthorRepository;
+import com.example.library_management_v2.repository.BookRepository;
+import com.example.library_management_v2.repository.UserRepository;
+import com.example.library_management_v2.service.BookSearchIndex;
+import com.example.library_management_v2.service.BookService;
+import com.example.library_management_v2.service.CatalogueCache;
+import com.example.library_management_v2.service.CatalogueSearchEngine;
+import com.example.library_management_v2.service.CatalogueVersions;
+import com.example.library_management_v2.service.SecurityLoggingService;
+import com.example.library_management_v2.service.UserService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Skrivtråden: skrivningar som väntar i kön committas tillsammans, och ett fel drabbar bara sin egen skrivning
+// - även när ett fel gör transaktionen oanvändbar: det som lyckats committas en gång, inget körs om
+// Ingen testtransaktion (NOT_SUPPORTED): skrivningarna committas på riktigt av skrivtråden
+
+@DataJpaTest
+@ActiveProfiles("test")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import({SQLiteWriter.class, SQLiteWriterTest.Metrics.class, BookService.class, BookSearchIndex.class,
+        CatalogueSearchEngine.class, CatalogueCache.class, CatalogueVersions.class,
+        UserService.class, PasswordConfig.class, SecurityLoggingService.class})
+public class SQLiteWriterTest {
+
+    private static final int WRITERS = 5;
+
+    @TestConfiguration
+    static class Metrics {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @Autowired
+    private SQLiteWriter sqliteWriter;
+
+    @Autowired
+    private AuthorRepository authorRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+
+    @AfterEach
+    public void tearDown() {
+        bookRepository.deleteAll();
+        userRepository.deleteAll();
+        authorRepository.deleteAll();
+    }
+
+
+    @Test
+    @DisplayName("Skrivningar som väntar i kön ska committas i samma transaktion - utom den som misslyckas")
+    public void testGroupCommit_FailureOnlyAffectsItsOwnWrite() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS + 2);
+        try {
+            // Håller skrivtråden upptagen medan de andra skrivningarna ställer sig i kön
+            Future<?> blocker = executor.submit(() -> sqliteWriter.execute(() -> {
+                started.countDown();
+                await(release);
+                return authorRepository.save(author("Först"));
+            }));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            List<Future<Author>> writes = new ArrayList<>();
+            for (int i = 0; i < WRITERS; i++) {
+                String name = "Skribent" + i;
+                writes.add(executor.submit(() -> sqliteWriter.execute(() -> authorRepository.save(author(name)))));
+            }
+            Future<Author> failing = executor.submit(() -> sqliteWriter.execute(() -> {
+                authorRepository.save(author("Fel"));
+                throw new IllegalStateException("Skrivningen misslyckades");
+            }));
+            waitForQueue(WRITERS + 1);
+
+            release.countDown();
+            blocker.get(10, TimeUnit.SECONDS);
+            for (Future<Author> write : writes) {
+                assertNotNull(write.get(10, TimeUnit.SECONDS).getId());
+            }
+            Exception e = assertThrows(Exception.class, () -> failing.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(WRITERS + 1, authorRepository.count(), "Alla utom den misslyckade skrivningen");
+        assertTrue(authorRepository.findByLastName("Fel").isEmpty());
+        assertEquals(WRITERS, registry.get("library.sqlite.writer.batch.size").summary().max(),
+                "De köade skrivningarna ska ha committats tillsammans");
+    }
+
+
+    @Test
+    @DisplayName("Ny bok och registrering i samma grupp som misslyckade skrivningar ska committas en gång")
+    public void testGroupFailure_CreateBookAndRegisterCommitted() throws Exception {
+        Author bookAuthor = authorRepository.save(author("Bokförfattare"));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        try {
+            Future<?> blocker = executor.submit(() -> sqliteWriter.execute(() -> {
+                started.countDown();
+                await(release);
+                return authorRepository.save(author("Först"));
+            }));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            // En i taget, så att ordningen i kön är bestämd
+            Future<BookDTO> book = executor.submit(() -> bookService.createBook(book("Gruppboken", bookAuthor.getId())));
+            waitForQueue(1);
+            Future<UserDTO> user = executor.submit(() -> userService.createUser(user("ny@example.com")));
+            waitForQueue(2);
+            // Misslyckas i Java - bara den här skrivningen rullas tillbaka (savepoint)
+            Future<Author> failing = executor.submit(() -> sqliteWriter.execute(() -> {
+                authorRepository.save(author("Fel"));
+                throw new IllegalStateException("Skrivningen misslyckades");
+            }));
+            waitForQueue(3);
+            // Samma e-post två gånger: den andra bryter mot unika indexet, och Hibernate markerar
+            // transaktionen rollback-only - skrivningarna före den committas ändå, och ingen körs om
+            Future<UserDTO> first = executor.submit(() -> userService.createUser(user("dubbel@example.com")));
+            waitForQueue(4);
+            Future<UserDTO> duplicate = executor.submit(() -> userService.createUser(user("dubbel@example.com")));
+            waitForQueue(5);
+
+            release.countDown();
+            blocker.get(10, TimeUnit.SECONDS);
+            assertNotNull(book.get(10, TimeUnit.SECONDS).getId());
+            assertNotNull(user.get(10, TimeUnit.SECONDS).getId());
+            assertNotNull(first.get(10, TimeUnit.SECONDS).getId());
+            Exception e = assertThrows(Exception.class, () -> failing.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, e.getCause());
+            assertThrows(Exception.class, () -> duplicate.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, bookRepository.count());
+        assertEquals(2, userRepository.count());
+        assertEquals(2, authorRepository.count(), "Bokförfattaren och den första skrivningen");
+        assertTrue(authorRepository.findByLastName("Fel").isEmpty());
+    }
+
+
+    @Test
+    @DisplayName("En skrivning som rullas tillbaka ska inte köra sina efter-commit-åtgärder - de andra ska")
+    public void testFailedWrite_AfterCommitCallbacksRemoved() throws Exception {
+        AtomicInteger failedCallbacks = new AtomicInteger();
+        AtomicInteger callbacks = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?> blocker = executor.submit(() -> sqliteWriter.execute(() -> {
+                started.countDown();
+                await(release);
+                return authorRepository.save(author("Först"));
+            }));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            Future<?> failing = executor.submit(() -> sqliteWriter.execute(() -> {
+                afterCommit(failedCallbacks::incrementAndGet);
+                throw new IllegalStateException("Skrivningen misslyckades");
+            }));
+            waitForQueue(1);
+            Future<?> ok = executor.submit(() -> sqliteWriter.execute(() -> {
+                afterCommit(callbacks::incrementAndGet);
+                return authorRepository.save(author("Efter"));
+            }));
+            waitForQueue(2);
+
+            release.countDown();
+            blocker.get(10, TimeUnit.SECONDS);
+            ok.get(10, TimeUnit.SECONDS);
+            assertThrows(Exception.class, () -> failing.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(0, failedCallbacks.get());
+        assertEquals(1, callbacks.get());
+    }
+
+
+    @Test
+    @DisplayName("Skrivning inifrån en read-only-transaktion ska ge fel, inte köras på läs-connection")
+    public void testReadOnlyTransaction_Rejected() {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        assertThrows(IllegalStateException.class, () -> readOnly.executeWithoutResult(
+                status -> sqliteWriter.execute(() -> authorRepository.save(author("Läsaren")))));
+        assertTrue(authorRepository.findByLastName("Läsaren").isEmpty());
+    }
+
+
+    private static void afterCommit(Runnable action) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+
+    private void waitForQueue(int size) throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            if (registry.get("library.sqlite.writer.queue.size").gauge().value() == size) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        fail("Kön fick aldrig " + size + " skrivningar");
+    }
+
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    private static BookDTO book(String title, Long authorId) {
+        BookDTO book = new BookDTO();
+        book.setTitle(title);
+        book.setPublicationYear(2001);
+        book.setAvailableCopies(2);
+        book.setTotalCopies(2);
+        book.setAuthorId(authorId);
+        return book;
+    }
+
+
+    private static CreateUserDTO user(String email) {
+        CreateUserDTO user = new CreateUserDTO();
+        user.setFirstName("Test");
+        user.setLastName("Testsson");
+        user.setEmail(email);
+        user.setPassword("Hemligt123!");
+        return user;
+    }
+
+
+    private static Author author(String lastName) {
+        Author author = new Author();
+        author.setFirstName("Test");
+        author.setLastName(lastName);
+        author.setBirthYear(1950);
+        return author;
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.library_management_v2.controller;
 
+import com.example.library_management_v2.config.JwtUtil;
 import com.example.library_management_v2.config.TestDatabaseConfig;
 import com.example.library_management_v2.dto.CreateLoanDTO;
 import com.example.library_management_v2.entity.Author;
@@ -18,6 +19,7 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
+import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.transaction.annotation.Transactional;
@@ -65,10 +67,18 @@ public class LoanControllerIntegrationTest {
     @Autowired
     private LoanRepository loanRepository;
 
+    // /loans kräver inloggning - anropen skickar en riktig JWT för testanvändaren
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private UserDetailsService userDetailsService;
+
     // Testdata som vi kommer att skapa i databasen före varje test
     private User testUser;
     private Book testBook;
     private Author testAuthor;
+    private String token;
 
     @BeforeEach
     public void setUp() {
@@ -92,8 +102,10 @@ public class LoanControllerIntegrationTest {
         testUser.setLastName("TestUser");
         testUser.setEmail("integration@test.com");
         testUser.setPassword("password123");
-        testUser.setRegistrationDate(LocalDate.now());
+        testUser.setRegistrationDate(LocalDate.now().toString());
+        testUser.setRole("ROLE_USER");  // Som UserService - /loans kräver ROLE_USER
         testUser = userRepository.save(testUser);
+        token = jwtUtil.generateToken(userDetailsService.loadUserByUsername(testUser.getEmail()));
 
         // Skapa och spara en testbok i databasen
         testBook = new Book();
@@ -118,6 +130,7 @@ public class LoanControllerIntegrationTest {
 
         // Agera och bekräfta: Utför POST-anrop och verifiera svaret
         mockMvc.perform(post("/loans")
+                        .header("Authorization", "Bearer " + token)
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(jsonRequest))
                 // Verifiera HTTP-statuskod
@@ -157,6 +170,7 @@ public class LoanControllerIntegrationTest {
 
         // Agera och bekräfta: Förvänta oss en 404-fel
         mockMvc.perform(post("/loans")
+                        .header("Authorization", "Bearer " + token)
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(jsonRequest))
                 .andExpect(status().isNotFound())
@@ -184,6 +198,7 @@ public class LoanControllerIntegrationTest {
 
         // Agera och bekräfta
         mockMvc.perform(post("/loans")
+                        .header("Authorization", "Bearer " + token)
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(jsonRequest))
                 .andExpect(status().isNotFound())
@@ -208,6 +223,7 @@ public class LoanControllerIntegrationTest {
 
         // Agera och bekräfta
         mockMvc.perform(post("/loans")
+                        .header("Authorization", "Bearer " + token)
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(jsonRequest))
                 .andExpect(status().isBadRequest())
@@ -228,13 +244,14 @@ public class LoanControllerIntegrationTest {
 
         // Agera och bekräfta
         mockMvc.perform(post("/loans")
+                        .header("Authorization", "Bearer " + token)
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(jsonRequest))
                 .andExpect(status().isBadRequest())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 // Verifiera att valideringsfel returneras för båda fälten
-                .andExpect(jsonPath("$.userId", notNullValue()))
-                .andExpect(jsonPath("$.bookId", notNullValue()));
+                .andExpect(jsonPath("$.validationErrors.userId", notNullValue()))
+                .andExpect(jsonPath("$.validationErrors.bookId", notNullValue()));
 
         // Verifiera att inget lån skapades
         assertEquals(0, loanRepository.count(), "Inget lån ska ha skapats vid valideringsfel");
@@ -255,6 +272,7 @@ public class LoanControllerIntegrationTest {
 
         // Agera och bekräfta
         mockMvc.perform(post("/loans")
+                        .header("Authorization", "Bearer " + token)
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(jsonRequest))
                 .andExpect(status().isCreated())
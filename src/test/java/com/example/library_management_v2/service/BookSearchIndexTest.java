@@ -0,0 +1,55 @@
+package com.example.library_management_v2.service;
+
+import com.example.library_management_v2.config.SQLiteMigrationsTest;
+import com.example.library_management_v2.dto.BookWithDetailsDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.sqlite.SQLiteDataSource;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// FTS5-sökningen mot en riktig SQLite-fil (H2 saknar FTS5):
+// exakt träff före prefix före övriga, oavsett vad bm25 tycker
+
+public class BookSearchIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    private BookSearchIndex searchIndex;
+
+
+    @BeforeEach
+    public void setUp() {
+        SQLiteDataSource dataSource = new SQLiteDataSource();
+        dataSource.setUrl("jdbc:sqlite:" + tempDir.resolve("library.db"));
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        SQLiteMigrationsTest.migrate(jdbcTemplate, dataSource);
+
+        jdbcTemplate.update("INSERT INTO authors (author_id, first_name, last_name) VALUES (1, 'Astrid', 'Lindgren')");
+        // bm25 föredrar korta titlar - "Om Pippi" hade hamnat före "Pippi Långstrump i Söderhavet"
+        jdbcTemplate.update("INSERT INTO books (book_id, title, author_id) VALUES (1, 'Om Pippi', 1)");
+        jdbcTemplate.update("INSERT INTO books (book_id, title, author_id) VALUES (2, 'Pippi Långstrump i Söderhavet', 1)");
+        jdbcTemplate.update("INSERT INTO books (book_id, title, author_id) VALUES (3, 'Pippi', 1)");
+
+        searchIndex = new BookSearchIndex();
+        ReflectionTestUtils.setField(searchIndex, "jdbcTemplate", jdbcTemplate);
+    }
+
+
+    @Test
+    @DisplayName("Exakt titel före titel som börjar med sökordet, före titel där ordet kommer senare")
+    public void testSearch_RanksExactThenPrefixThenOther() {
+        List<BookWithDetailsDTO> books = searchIndex.search("Pippi", null, false, 10, 0);
+
+        assertEquals(List.of("Pippi", "Pippi Långstrump i Söderhavet", "Om Pippi"),
+                books.stream().map(BookWithDetailsDTO::getTitle).toList());
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.library_management_v2.service;
+
+import com.example.library_management_v2.dto.BookPageDTO;
+import com.example.library_management_v2.dto.BookWithDetailsDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Cachen ska bara rensa de poster som en ändring faktiskt påverkar
+
+public class CatalogueCacheTest {
+
+    private CatalogueCache cache;
+    private AtomicInteger loads;
+
+
+    @BeforeEach
+    public void setUp() {
+        cache = new CatalogueCache();
+        cache.configure(true, 100, Duration.ofMinutes(1));
+        loads = new AtomicInteger();
+    }
+
+
+    @Test
+    @DisplayName("Andra anropet med samma sökning ska komma från cachen")
+    public void testReadThrough() {
+        search("ronja", 1L);
+        search("ronja", 1L);
+
+        assertEquals(1, loads.get());
+    }
+
+
+    @Test
+    @DisplayName("Lån av en bok rensar bara poster som innehåller boken")
+    public void testBookChangedEvictsOnlyAffectedEntries() {
+        search("ronja", 1L);
+        search("emil", 2L);
+        page(null, 1L, 2L);
+
+        cache.bookChanged(1L);
+        loads.set(0);
+
+        search("ronja", 1L);    // Innehåller bok 1 - laddas om
+        search("emil", 2L);     // Påverkas inte
+        page(null, 1L, 2L);     // Innehåller bok 1 - laddas om
+
+        assertEquals(2, loads.get());
+    }
+
+
+    @Test
+    @DisplayName("Ny bok rensar matchande sökningar och sista sidan, men inte andra poster")
+    public void testBookCreatedEvictsMatchingSearchesAndLastPage() {
+        search("min mio", 1L);
+        search("emil", 2L);
+        searchAuthor("astrid", 3L);
+        searchAuthor("tove", 4L);
+        page(null, 1L, 2L);         // Sista sidan (ingen nextCursor)
+
+        cache.bookCreated("Mio min Mio", "Astrid", "Lindgren");
+        loads.set(0);
+
+        search("min mio", 1L);      // Matchar titeln - laddas om
+        search("emil", 2L);         // Matchar inte - från cachen
+        searchAuthor("astrid", 3L); // Matchar förnamnet (FTS5 söker i båda namnen) - laddas om
+        searchAuthor("tove", 4L);   // Matchar inte - från cachen
+        page(null, 1L, 2L);         // Sista sidan - laddas om
+
+        assertEquals(3, loads.get());
+    }
+
+
+    private List<BookWithDetailsDTO> search(String text, long bookId) {
+        return cache.getSearch(text, null, false, 50, 0, () -> {
+            loads.incrementAndGet();
+            return List.of(book(bookId));
+        });
+    }
+
+
+    private List<BookWithDetailsDTO> searchAuthor(String author, long bookId) {
+        return cache.getSearch(null, author, false, 50, 0, () -> {
+            loads.incrementAndGet();
+            return List.of(book(bookId));
+        });
+    }
+
+
+    private BookPageDTO page(Long afterId, long... bookIds) {
+        return cache.getPage(afterId, 50, () -> {
+            loads.incrementAndGet();
+            return new BookPageDTO(Arrays.stream(bookIds).mapToObj(this::book).toList(), null);
+        });
+    }
+
+
+    private BookWithDetailsDTO book(long id) {
+        BookWithDetailsDTO book = new BookWithDetailsDTO();
+        book.setId(id);
+        return book;
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.library_management_v2.service;
+
+import com.example.library_management_v2.config.SQLiteWriter;
+import com.example.library_management_v2.dto.BookWithDetailsDTO;
+import com.example.library_management_v2.dto.ImportReportDTO;
+import com.example.library_management_v2.entity.Author;
+import com.example.library_management_v2.entity.Book;
+import com.example.library_management_v2.repository.AuthorRepository;
+import com.example.library_management_v2.repository.BookRepository;
+import com.example.library_management_v2.repository.OffsetPageRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Bulk-import: giltiga rader sparas i batchar över flera transaktioner, ogiltiga rader avvisas med radnummer
+
+@DataJpaTest(properties = {
+        "library.import.transaction-rows=2",    // Flera transaktioner även med lite testdata
+        "library.import.batch-size=1"
+})
+@ActiveProfiles("test")
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import({CatalogueImportService.class, CatalogueSearchEngine.class, CatalogueCache.class, CatalogueVersions.class, SQLiteWriter.class})
+public class CatalogueImportServiceTest {
+
+    @Autowired
+    private CatalogueImportService importService;
+
+    @Autowired
+    private AuthorRepository authorRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long authorId;
+
+
+    @BeforeEach
+    public void setUp() {
+        Author author = new Author();
+        author.setFirstName("Astrid");
+        author.setLastName("Lindgren");
+        author.setBirthYear(1907);
+        authorId = authorRepository.save(author).getId();
+    }
+
+
+    @Test
+    @DisplayName("CSV med författare: citerade fält, dubbletter och ogiltiga år")
+    public void testImportAuthorsCsv() throws Exception {
+        ImportReportDTO report = importService.importAuthors(stream(
+                "firstName,lastName,birthYear,nationality\n"
+                        + "Selma,Lagerlöf,1858,Svensk\n"
+                        + "\"Tove \"\"Moomin\"\"\",Jansson,1914,\"Finsk, svenskspråkig\"\n"
+                        + "astrid,LINDGREN,1907,\n"            // Finns redan
+                        + "Selma,Lagerlöf,1858,Svensk\n"       // Dubblett i filen
+                        + "August,Strindberg,år,Svensk\n"
+                        + "Henning,Mankell,1948\n"),           // För få fält
+                CatalogueImportService.Format.CSV);
+
+        assertEquals(2, report.getImported());
+        assertEquals(4, report.getRejected());
+        assertEquals(List.of(4L, 5L, 6L, 7L),
+                report.getRejectedRows().stream().map(ImportReportDTO.RejectedRow::getLine).toList());
+
+        Author tove = authorRepository.findByLastName("Jansson").get(0);
+        assertEquals("Tove \"Moomin\"", tove.getFirstName());
+        assertEquals("Finsk, svenskspråkig", tove.getNationality());
+    }
+
+
+    @Test
+    @DisplayName("NDJSON med böcker: författare slås upp på namn eller id, okända avvisas")
+    public void testImportBooksNdjson() throws Exception {
+        Long astridId = authorRepository.findByLastName("Lindgren").get(0).getId();
+
+        ImportReportDTO report = importService.importBooks(stream(
+                "{\"title\":\"Ronja rövardotter\",\"publicationYear\":1981,\"totalCopies\":3,"
+                        + "\"authorFirstName\":\"Astrid\",\"authorLastName\":\"Lindgren\"}\n"
+                        + "{\"title\":\"Mio min Mio\",\"authorId\":" + astridId + "}\n"
+                        + "{\"title\":\"Anonym\",\"availableCopies\":1,\"totalCopies\":2}\n"
+                        + "{\"title\":\"Okänd\",\"authorFirstName\":\"Ingen\",\"authorLastName\":\"Alls\"}\n"
+                        + "{\"title\":\"Fel\",\"availableCopies\":5,\"totalCopies\":2}\n"
+                        + "inte json\n"),
+                CatalogueImportService.Format.NDJSON);
+
+        assertEquals(3, report.getImported());
+        assertEquals(3, report.getRejected());
+
+        List<Book> books = bookRepository.findAll();
+        assertEquals(3, books.size());
+        Book ronja = bookRepository.findById(findByTitle("ronja").getId()).orElseThrow();
+        assertEquals(astridId, ronja.getAuthor().getId());
+        assertEquals(3, ronja.getAvailableCopies());
+        assertEquals(0L, ronja.getVersion());
+        assertNull(findByTitle("anonym").getAuthorLastName());
+    }
+
+
+    @Test
+    @DisplayName("En chunk som databasen inte kan spara avvisas med sina radnummer - resten importeras")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)     // Varje chunk committas (eller rullas tillbaka) på riktigt
+    public void testImportBooks_FailedChunkRejected() throws Exception {
+        // Databasen (inte valideringen) avvisar en av raderna - då rullas hela dess chunk tillbaka
+        jdbcTemplate.execute("ALTER TABLE books ADD CONSTRAINT no_broken_books CHECK (title <> 'Trasig')");
+        try {
+            ImportReportDTO report = importService.importBooks(stream(
+                    "title,publicationYear,totalCopies,authorId\n"
+                            + "Bok 1,2001,1," + authorId + "\n"
+                            + "Bok 2,2001,1," + authorId + "\n"
+                            + "Bok 3,2001,1," + authorId + "\n"
+                            + "Trasig,2001,1," + authorId + "\n"
+                            + "Bok 5,2001,1," + authorId + "\n"),
+                    CatalogueImportService.Format.CSV);
+
+            assertEquals(3, report.getImported());
+            assertEquals(2, report.getRejected());
+            assertEquals(List.of(4L, 5L),
+                    report.getRejectedRows().stream().map(ImportReportDTO.RejectedRow::getLine).toList());
+            assertEquals(List.of("Bok 1", "Bok 2", "Bok 5"),
+                    jdbcTemplate.queryForList("SELECT title FROM books ORDER BY book_id", String.class));
+        } finally {
+            jdbcTemplate.execute("ALTER TABLE books DROP CONSTRAINT no_broken_books");
+            bookRepository.deleteAll();
+            authorRepository.deleteAll();
+        }
+    }
+
+
+    @Test
+    @DisplayName("CSV-parsern hanterar citattecken och kommatecken i fält")
+    public void testParseCsvLine() {
+        assertEquals(List.of("a", "b, c", "d \"e\"", ""), CatalogueImportService.parseCsvLine("a,\"b, c\",\"d \"\"e\"\"\","));
+        assertThrows(IllegalArgumentException.class, () -> CatalogueImportService.parseCsvLine("a,\"b"));
+    }
+
+
+    // Samma titelsökning som GET /books/search gör mot databasen
+    private BookWithDetailsDTO findByTitle(String title) {
+        return bookRepository.searchBookDetails(title, title, null, null, new OffsetPageRequest(0, 10)).get(0);
+    }
+
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
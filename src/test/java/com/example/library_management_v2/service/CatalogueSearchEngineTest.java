@@ -0,0 +1,114 @@
+package com.example.library_management_v2.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Sökindexet i minnet ska ge samma träffar som LIKE '%ord%', sorterade exakt > prefix > ordprefix > delsträng
+
+public class CatalogueSearchEngineTest {
+
+    private CatalogueSearchEngine engine;
+
+
+    @BeforeEach
+    public void setUp() {
+        engine = new CatalogueSearchEngine();
+
+        String[] titles = {"Ronja rövardotter", "Emil i Lönneberga", "Bröderna Lejonhjärta", "Ronja", "Pippi Långstrump", "Mio min Mio"};
+        String[] authors = {"Lindgren", "Lindgren", "Lindgren", "Läckberg", "Lindgren", "Lindgren"};
+        long[] ids = {1, 2, 3, 4, 5, 6};
+        for (int i = 0; i < titles.length; i++) {
+            titles[i] = CatalogueSearchEngine.normalize(titles[i]);
+            authors[i] = CatalogueSearchEngine.normalize(authors[i]);
+        }
+        engine.load(ids, titles, authors, ids.length);
+    }
+
+
+    @AfterEach
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+
+    @Test
+    @DisplayName("Exakt träff före prefix, ordprefix och delsträng")
+    public void testRanking() {
+        assertEquals(List.of(4L, 1L), engine.search("ronja", null, false, 10, 0));
+        assertEquals(List.of(6L), engine.search("mio", null, false, 10, 0));
+        // Kortare söktext än ett trigram - alla delsträngar, kortast titel först inom samma rang
+        assertEquals(List.of(4L, 1L, 5L, 2L, 3L), engine.search("r", null, false, 10, 0));
+    }
+
+
+    @Test
+    @DisplayName("Diakritiska tecken och versaler ignoreras")
+    public void testNormalization() {
+        assertEquals(List.of(4L), engine.search(null, "LACKBERG", false, 10, 0));
+        assertEquals(List.of(2L), engine.search("lonneberga", null, false, 10, 0));
+    }
+
+
+    @Test
+    @DisplayName("OR ger unionen och AND snittet av titel- och författarträffar")
+    public void testMatchAnyAndAll() {
+        // Alla har en exakt träff (titel eller efternamn) - kortast titel först
+        assertEquals(List.of(4L, 6L, 5L, 1L, 2L, 3L), engine.search("ronja", "lindgren", false, 10, 0));
+        assertEquals(List.of(1L), engine.search("ronja", "lindgren", true, 10, 0));
+        assertTrue(engine.search("finns inte", null, false, 10, 0).isEmpty());
+    }
+
+
+    @Test
+    @DisplayName("Bara den begärda sidan returneras - en bok i både bas och delta räknas en gång")
+    public void testPaging() {
+        ReflectionTestUtils.setField(engine, "enabled", true);
+        engine.add(1, "Ronja rövardotter", "Lindgren");     // Finns redan i bas-segmentet
+        engine.add(7, "Ronja igen", "Lindgren");
+
+        assertEquals(List.of(4L, 7L, 1L), engine.search("ronja", null, false, 10, 0));
+        assertEquals(List.of(7L), engine.search("ronja", null, false, 1, 1));
+        assertEquals(List.of(1L), engine.search("ronja", null, false, 5, 2));
+        assertTrue(engine.search("ronja", null, false, 5, 3).isEmpty());
+    }
+
+
+    @Test
+    @DisplayName("Nya böcker är sökbara direkt och slås ihop med bas-segmentet i bakgrunden")
+    public void testAddAndBackgroundMerge() throws Exception {
+        ReflectionTestUtils.setField(engine, "enabled", true);
+        int count = 1500;   // Fler än ett delta får innehålla - ger en sammanslagning
+        for (int i = 0; i < count; i++) {
+            engine.add(100 + i, "Saga nummer " + i, "Andersen");
+        }
+        engine.add(10_000, "Ronja", "Efter");
+
+        assertEquals(List.of(4L, 10_000L), engine.search("ronja", null, false, 2, 0));
+        engine.awaitIndexing();
+
+        assertEquals(List.of(4L, 10_000L, 1L), engine.search("ronja", null, false, 10, 0));
+        assertEquals(count, engine.search(null, "andersen", false, Integer.MAX_VALUE, 0).size());
+        assertEquals(List.of(1099L), engine.search("saga nummer 999", null, false, 10, 0));
+    }
+
+
+    @Test
+    @DisplayName("De minsta nycklarna utan att sortera alla")
+    public void testSmallest() {
+        long[] keys = new Random(42).longs(10_000, 0, 1_000).toArray();
+        long[] sorted = keys.clone();
+        Arrays.sort(sorted);
+
+        assertArrayEquals(Arrays.copyOf(sorted, 25), CatalogueSearchEngine.smallest(keys, 25));
+        assertArrayEquals(Arrays.copyOf(sorted, 9_000), CatalogueSearchEngine.smallest(keys, 9_000));
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.library_management_v2.service;
+
+import com.example.library_management_v2.dto.CreateLoanBatchDTO;
+import com.example.library_management_v2.dto.LoanBatchResultDTO;
+import com.example.library_management_v2.dto.ReturnLoanBatchDTO;
+import com.example.library_management_v2.entity.Author;
+import com.example.library_management_v2.entity.Book;
+import com.example.library_management_v2.entity.User;
+import com.example.library_management_v2.exception.UserNotFoundException;
+import com.example.library_management_v2.repository.AuthorRepository;
+import com.example.library_management_v2.repository.BookRepository;
+import com.example.library_management_v2.repository.LoanRepository;
+import com.example.library_management_v2.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Batch-lån och batch-återlämning: ett resultat per post, i samma ordning som förfrågan
+// Ingen testtransaktion (NOT_SUPPORTED): batchen committas på riktigt, som i produktion
+
+@DataJpaTest
+@ActiveProfiles("test")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({LoanService.class, CatalogueCache.class, CatalogueVersions.class})
+public class LoanBatchTest {
+
+    @Autowired
+    private LoanService loanService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private AuthorRepository authorRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    private User user;
+    private Book available;
+    private Book lastCopy;
+    private Book unavailable;
+
+
+    @BeforeEach
+    public void setUp() {
+        Author author = new Author();
+        author.setFirstName("Astrid");
+        author.setLastName("Lindgren");
+        author.setBirthYear(1907);
+        author = authorRepository.save(author);
+
+        available = saveBook(author, "Pippi Långstrump", 3);
+        lastCopy = saveBook(author, "Emil i Lönneberga", 1);
+        unavailable = saveBook(author, "Ronja Rövardotter", 0);
+
+        user = new User();
+        user.setFirstName("Kiosk");
+        user.setLastName("Test");
+        user.setEmail("kiosk@test.com");
+        user.setPassword("hash");
+        user.setRole("USER");
+        user.setRegistrationDate(LocalDate.now().toString());
+        user = userRepository.save(user);
+    }
+
+
+    @AfterEach
+    public void tearDown() {
+        loanRepository.deleteAll();
+        bookRepository.deleteAll();
+        authorRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+
+    @Test
+    @DisplayName("Batch-lån ska låna det som går och rapportera fel per bok")
+    public void testCreateLoans_PartialSuccess() {
+        List<LoanBatchResultDTO> results = loanService.createLoans(checkout(
+                available.getId(), unavailable.getId(), 999L, lastCopy.getId(), lastCopy.getId()));
+
+        assertEquals(5, results.size());
+        assertTrue(results.get(0).isSuccess());
+        assertEquals(available.getId(), results.get(0).getLoan().getBookId());
+        assertEquals("Astrid Lindgren", results.get(0).getLoan().getAuthorName());
+        assertFalse(results.get(1).isSuccess());    // Inga exemplar
+        assertFalse(results.get(2).isSuccess());    // Finns inte
+        assertEquals(999L, results.get(2).getId());
+        assertTrue(results.get(3).isSuccess());
+        assertFalse(results.get(4).isSuccess());    // Samma bok två gånger
+        assertNotNull(results.get(4).getError());
+
+        assertEquals(2, bookRepository.findById(available.getId()).orElseThrow().getAvailableCopies());
+        assertEquals(0, bookRepository.findById(lastCopy.getId()).orElseThrow().getAvailableCopies());
+        assertEquals(2, loanRepository.findByUserId(user.getId()).size());
+    }
+
+
+    @Test
+    @DisplayName("Batch-lån för en användare som inte finns ska inte låna något")
+    public void testCreateLoans_UnknownUser() {
+        CreateLoanBatchDTO request = checkout(available.getId());
+        request.setUserId(999L);
+
+        assertThrows(UserNotFoundException.class, () -> loanService.createLoans(request));
+        assertEquals(3, bookRepository.findById(available.getId()).orElseThrow().getAvailableCopies());
+    }
+
+
+    @Test
+    @DisplayName("Batch-återlämning ska lämna tillbaka lånen och rapportera fel per lån")
+    public void testReturnBooks_PartialSuccess() {
+        List<LoanBatchResultDTO> loans = loanService.createLoans(checkout(available.getId(), lastCopy.getId()));
+        Long first = loans.get(0).getLoan().getId();
+        Long second = loans.get(1).getLoan().getId();
+
+        ReturnLoanBatchDTO request = new ReturnLoanBatchDTO();
+        request.setLoanIds(List.of(first, 999L, second, first));
+        List<LoanBatchResultDTO> results = loanService.returnBooks(request);
+
+        assertTrue(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());    // Finns inte
+        assertTrue(results.get(2).isSuccess());
+        assertFalse(results.get(3).isSuccess());    // Redan återlämnad (tidigare i samma förfrågan)
+
+        assertEquals(3, bookRepository.findById(available.getId()).orElseThrow().getAvailableCopies());
+        assertEquals(1, bookRepository.findById(lastCopy.getId()).orElseThrow().getAvailableCopies());
+        assertTrue(loanRepository.findByUserId(user.getId()).stream().noneMatch(l -> l.isActive()));
+    }
+
+
+    @Test
+    @DisplayName("Batch-återlämning av flera lån på samma bok ska lämna tillbaka alla exemplar")
+    public void testReturnBooks_SameBookTwice() {
+        Long first = loanService.createLoans(checkout(available.getId(), lastCopy.getId())).get(0).getLoan().getId();
+        Long second = loanService.createLoans(checkout(available.getId())).get(0).getLoan().getId();
+        Long third = loanRepository.findByUserId(user.getId()).stream()
+                .filter(l -> l.getBook().getId().equals(lastCopy.getId())).findFirst().orElseThrow().getId();
+        assertEquals(1, bookRepository.findById(available.getId()).orElseThrow().getAvailableCopies());
+
+        ReturnLoanBatchDTO request = new ReturnLoanBatchDTO();
+        request.setLoanIds(List.of(first, second, third));
+        assertTrue(loanService.returnBooks(request).stream().allMatch(LoanBatchResultDTO::isSuccess));
+
+        assertEquals(3, bookRepository.findById(available.getId()).orElseThrow().getAvailableCopies());
+        assertEquals(1, bookRepository.findById(lastCopy.getId()).orElseThrow().getAvailableCopies());
+    }
+
+
+    private CreateLoanBatchDTO checkout(Long... bookIds) {
+        CreateLoanBatchDTO request = new CreateLoanBatchDTO();
+        request.setUserId(user.getId());
+        request.setBookIds(List.of(bookIds));
+        return request;
+    }
+
+
+    private Book saveBook(Author author, String title, int copies) {
+        Book book = new Book();
+        book.setTitle(title);
+        book.setPublicationYear(1950);
+        book.setAvailableCopies(copies);
+        book.setTotalCopies(Math.max(copies, 1));
+        book.setAuthor(author);
+        return bookRepository.save(book);
+    }
+}
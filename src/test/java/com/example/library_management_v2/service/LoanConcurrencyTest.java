@@ -0,0 +1,147 @@
+package com.example.library_management_v2.service;
+
+import com.example.library_management_v2.dto.CreateLoanDTO;
+import com.example.library_management_v2.entity.Author;
+import com.example.library_management_v2.entity.Book;
+import com.example.library_management_v2.entity.User;
+import com.example.library_management_v2.exception.BookNotAvailableException;
+import com.example.library_management_v2.repository.AuthorRepository;
+import com.example.library_management_v2.repository.BookRepository;
+import com.example.library_management_v2.repository.LoanRepository;
+import com.example.library_management_v2.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Många trådar lånar samma bok samtidigt - det får aldrig lånas ut fler exemplar än som finns
+// Ingen testtransaktion (NOT_SUPPORTED): varje lån committas på riktigt, som i produktion
+
+@DataJpaTest
+@ActiveProfiles("test")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({LoanService.class, CatalogueCache.class, CatalogueVersions.class})
+public class LoanConcurrencyTest {
+
+    private static final int COPIES = 5;
+    private static final int THREADS = 16;
+    private static final int ATTEMPTS_PER_THREAD = 4;
+
+    @Autowired
+    private LoanService loanService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private AuthorRepository authorRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    private Book book;
+    private User user;
+
+
+    @BeforeEach
+    public void setUp() {
+        Author author = new Author();
+        author.setFirstName("Astrid");
+        author.setLastName("Lindgren");
+        author.setBirthYear(1907);
+        author = authorRepository.save(author);
+
+        book = new Book();
+        book.setTitle("Populär bok");
+        book.setPublicationYear(1945);
+        book.setAvailableCopies(COPIES);
+        book.setTotalCopies(COPIES);
+        book.setAuthor(author);
+        book = bookRepository.save(book);
+
+        user = new User();
+        user.setFirstName("Stress");
+        user.setLastName("Test");
+        user.setEmail("stress@test.com");
+        user.setPassword("hash");
+        user.setRole("USER");
+        user.setRegistrationDate(LocalDate.now().toString());
+        user = userRepository.save(user);
+    }
+
+
+    @AfterEach
+    public void tearDown() {
+        loanRepository.deleteAll();
+        bookRepository.deleteAll();
+        authorRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+
+    @Test
+    @DisplayName("Samtidiga lån av samma bok ska aldrig låna ut fler exemplar än som finns")
+    public void testConcurrentLoans_NoOverselling() throws Exception {
+        CreateLoanDTO request = new CreateLoanDTO();
+        request.setUserId(user.getId());
+        request.setBookId(book.getId());
+
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();      // Alla trådar startar samtidigt
+                    for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                        try {
+                            loanService.createLoan(request);
+                            succeeded.incrementAndGet();
+                        } catch (BookNotAvailableException e) {
+                            rejected.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);   // Kastar vidare oväntade fel från trådarna
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Book after = bookRepository.findById(book.getId()).orElseThrow();
+        assertEquals(COPIES, succeeded.get(), "Exakt så många lån som det fanns exemplar");
+        assertEquals(THREADS * ATTEMPTS_PER_THREAD - COPIES, rejected.get());
+        assertEquals(0, after.getAvailableCopies(), "Inga exemplar kvar - och aldrig negativt");
+        assertEquals(COPIES, loanRepository.findByUserId(user.getId()).size());
+        assertEquals(COPIES, after.getVersion(), "Varje reservation räknar upp versionen");
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.library_management_v2.service;
+
+import com.example.library_management_v2.config.SQLiteWriter;
+import com.example.library_management_v2.dto.LoanPageDTO;
+import com.example.library_management_v2.entity.Author;
+import com.example.library_management_v2.entity.Book;
+import com.example.library_management_v2.entity.Loan;
+import com.example.library_management_v2.entity.User;
+import com.example.library_management_v2.repository.AuthorRepository;
+import com.example.library_management_v2.repository.BookRepository;
+import com.example.library_management_v2.repository.LoanRepository;
+import com.example.library_management_v2.repository.OverdueLoanRepository;
+import com.example.library_management_v2.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Genomsökning efter försenade lån: bara aktiva lån med passerat förfallodatum, en gång per lån
+// Ingen testtransaktion (NOT_SUPPORTED): genomsökningen committar sina chunkar på riktigt
+
+@DataJpaTest
+@ActiveProfiles("test")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({OverdueLoanService.class, LoanService.class, CatalogueCache.class, CatalogueVersions.class, SQLiteWriter.class})
+public class OverdueLoanServiceTest {
+
+    @Autowired
+    private OverdueLoanService overdueLoanService;
+
+    @Autowired
+    private LoanService loanService;
+
+    @Autowired
+    private OverdueLoanRepository overdueLoanRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private AuthorRepository authorRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    private User user;
+    private Book book;
+
+
+    @BeforeEach
+    public void setUp() {
+        // Liten chunk så att genomsökningen går över flera chunkar, och ingen tidigare körning
+        ReflectionTestUtils.setField(overdueLoanService, "chunkSize", 2);
+        ReflectionTestUtils.setField(overdueLoanService, "scannedUntil", null);
+
+        Author author = new Author();
+        author.setFirstName("Astrid");
+        author.setLastName("Lindgren");
+        author.setBirthYear(1907);
+        author = authorRepository.save(author);
+
+        book = new Book();
+        book.setTitle("Mio, min Mio");
+        book.setPublicationYear(1954);
+        book.setAvailableCopies(10);
+        book.setTotalCopies(10);
+        book.setAuthor(author);
+        book = bookRepository.save(book);
+
+        user = new User();
+        user.setFirstName("Sen");
+        user.setLastName("Låntagare");
+        user.setEmail("sen@test.com");
+        user.setPassword("hash");
+        user.setRole("USER");
+        user.setRegistrationDate(LocalDate.now().toString());
+        user = userRepository.save(user);
+    }
+
+
+    @AfterEach
+    public void tearDown() {
+        overdueLoanRepository.deleteAll();
+        loanRepository.deleteAll();
+        bookRepository.deleteAll();
+        authorRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+
+    @Test
+    @DisplayName("Genomsökningen ska bara hitta aktiva lån med passerat förfallodatum")
+    public void testScan_FindsOnlyOverdueLoans() {
+        LocalDate today = LocalDate.now();
+        Loan late = saveLoan(today.minusDays(30), null);
+        Loan veryLate = saveLoan(today.minusDays(400), null);
+        Loan lateToo = saveLoan(today.minusDays(1), null);
+        saveLoan(today, null);                              // Förfaller idag - inte försenat än
+        saveLoan(today.plusDays(7), null);
+        saveLoan(today.minusDays(30), today.minusDays(2));  // Återlämnat
+
+        assertEquals(3, overdueLoanService.scan());
+        assertEquals(0, overdueLoanService.scan(), "Redan genomsökt idag");
+
+        LoanPageDTO first = overdueLoanService.getOverdueLoans(null, 2);
+        assertEquals(2, first.getItems().size());
+        assertEquals(late.getId(), first.getItems().get(0).getId());
+        assertEquals(veryLate.getId(), first.getItems().get(1).getId());
+        assertTrue(first.getItems().get(0).isOverdue());
+        assertEquals("Astrid Lindgren", first.getItems().get(0).getAuthorName());
+        assertNotNull(first.getNextCursor());
+
+        LoanPageDTO second = overdueLoanService.getOverdueLoans(first.getNextCursor(), 2);
+        assertEquals(1, second.getItems().size());
+        assertEquals(lateToo.getId(), second.getItems().get(0).getId());
+        assertNull(second.getNextCursor());
+    }
+
+
+    @Test
+    @DisplayName("Återlämnade och förlängda lån ska försvinna från listan")
+    public void testReturnAndExtend_RemoveFromOverdue() {
+        LocalDate today = LocalDate.now();
+        Loan returned = saveLoan(today.minusDays(3), null);
+        Loan extended = saveLoan(today.minusDays(3), null);
+        Loan stillLate = saveLoan(today.minusDays(20), null);
+
+        assertEquals(3, overdueLoanService.scan());
+
+        loanService.returnBook(returned.getId());
+        loanService.extendLoan(extended.getId());   // Nytt förfallodatum om 11 dagar
+        loanService.extendLoan(stillLate.getId());  // Fortfarande 6 dagar sent
+
+        LoanPageDTO page = overdueLoanService.getOverdueLoans(null, 50);
+        assertEquals(1, page.getItems().size());
+        assertEquals(stillLate.getId(), page.getItems().get(0).getId());
+    }
+
+
+    private Loan saveLoan(LocalDate dueDate, LocalDate returnedDate) {
+        Loan loan = new Loan();
+        loan.setUser(user);
+        loan.setBook(book);
+        loan.setBorrowedDate(dueDate.minusDays(14));
+        loan.setDueDate(dueDate);
+        loan.setReturnedDate(returnedDate);
+        return loanRepository.save(loan);
+    }
+}
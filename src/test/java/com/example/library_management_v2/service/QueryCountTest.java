@@ -0,0 +1,209 @@
+package com.example.library_management_v2.service;
+
+import com.example.library_management_v2.config.SQLiteWriter;
+import com.example.library_management_v2.dto.BookWithDetailsDTO;
+import com.example.library_management_v2.dto.LoanDTO;
+import com.example.library_management_v2.entity.Author;
+import com.example.library_management_v2.entity.Book;
+import com.example.library_management_v2.entity.Loan;
+import com.example.library_management_v2.entity.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Räknar hur många SQL-satser varje list-endpoint kör i service-lagret
+// Testdatan har flera författare, böcker och lån så att ett N+1-problem syns direkt:
+// då växer antalet satser med antalet rader istället för att vara konstant
+
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "library.catalogue-cache.enabled=false"     // Mät frågorna, inte cachen
+})
+@ActiveProfiles("test")
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import({BookService.class, BookSearchIndex.class, CatalogueSearchEngine.class, CatalogueCache.class, CatalogueVersions.class, LoanService.class, SQLiteWriter.class})
+public class QueryCountTest {
+
+    @Autowired
+    private BookService bookService;
+
+    @Autowired
+    private LoanService loanService;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private User testUser;
+
+
+    @BeforeEach
+    public void setUp() {
+        testUser = new User();
+        testUser.setFirstName("Test");
+        testUser.setLastName("User");
+        testUser.setEmail("querycount@test.com");
+        testUser.setPassword("hash");
+        testUser.setRole("USER");
+        testUser.setRegistrationDate(LocalDate.now().toString());
+        entityManager.persist(testUser);
+
+        // 3 författare med 2 böcker var, och ett lån per bok
+        for (int a = 0; a < 3; a++) {
+            Author author = new Author();
+            author.setFirstName("Författare" + a);
+            author.setLastName("Efternamn" + a);
+            author.setBirthYear(1950 + a);
+            entityManager.persist(author);
+
+            for (int b = 0; b < 2; b++) {
+                Book book = new Book();
+                book.setTitle("Bok " + a + "-" + b);
+                book.setPublicationYear(2000 + b);
+                book.setAvailableCopies(1);
+                book.setTotalCopies(2);
+                book.setAuthor(author);
+                entityManager.persist(book);
+
+                Loan loan = new Loan();
+                loan.setUser(testUser);
+                loan.setBook(book);
+                loan.setBorrowedDate(LocalDate.now().minusDays(20));
+                loan.setDueDate(LocalDate.now().minusDays(6));
+                entityManager.persist(loan);
+            }
+        }
+
+        // Töm persistence context så att allt måste läsas från databasen igen
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+
+    @Test
+    @DisplayName("GET /books - en sida med böcker ska hämtas med en SQL-sats")
+    public void testBooksPage_SingleStatement() {
+        List<BookWithDetailsDTO> books = assertStatementCount(1,
+                () -> bookService.getBooksPage(null, 50).getItems());
+
+        assertEquals(6, books.size());
+        assertNotNull(books.get(0).getAuthorLastName());
+    }
+
+
+    @Test
+    @DisplayName("GET /books/search - sökning på titel ska hämtas med en SQL-sats")
+    public void testSearchByTitle_SingleStatement() {
+        List<BookWithDetailsDTO> books = assertStatementCount(1,
+                () -> bookService.searchBooks("bok", null));
+
+        assertEquals(6, books.size());
+    }
+
+
+    @Test
+    @DisplayName("GET /books/search - sökning på författare ska hämtas med en SQL-sats")
+    public void testSearchByAuthor_SingleStatement() {
+        List<BookWithDetailsDTO> books = assertStatementCount(1,
+                () -> bookService.searchBooks(null, "efternamn1"));
+
+        assertEquals(2, books.size());
+    }
+
+
+    @Test
+    @DisplayName("GET /books/search - titel och författare ska sökas i samma SQL-sats utan dubbletter")
+    public void testSearchByTitleAndAuthor_SingleStatement() {
+        List<BookWithDetailsDTO> books = assertStatementCount(1,
+                () -> bookService.searchBooks("bok 0-", "efternamn0"));
+
+        assertEquals(2, books.size());
+    }
+
+
+    @Test
+    @DisplayName("GET /books/search - utan sökord ska alla böcker hämtas med en SQL-sats")
+    public void testSearchWithoutFilter_SingleStatement() {
+        List<BookWithDetailsDTO> books = assertStatementCount(1,
+                () -> bookService.searchBooks(null, null));
+
+        assertEquals(6, books.size());
+    }
+
+
+    @Test
+    @DisplayName("GET /books/search - match=all ska kräva både titel och författare i samma SQL-sats")
+    public void testSearchMatchAll_SingleStatement() {
+        List<BookWithDetailsDTO> books = assertStatementCount(1,
+                () -> bookService.searchBooks("bok", "efternamn2", true, 50, 0));
+
+        assertEquals(2, books.size());
+        assertEquals("Efternamn2", books.get(0).getAuthorLastName());
+    }
+
+
+    @Test
+    @DisplayName("GET /books/search - exakt träff och prefix ska komma före delsträng")
+    public void testSearchRanking() {
+        List<BookWithDetailsDTO> books = bookService.searchBooks("bok 1-1", "namn0", false, 50, 0);
+
+        assertEquals(3, books.size());
+        assertEquals("Bok 1-1", books.get(0).getTitle());
+    }
+
+
+    @Test
+    @DisplayName("GET /books/search - limit och offset ska ge en sida av träfflistan")
+    public void testSearchLimitOffset() {
+        List<BookWithDetailsDTO> all = bookService.searchBooks("bok", null, false, 50, 0);
+        List<BookWithDetailsDTO> page = assertStatementCount(1,
+                () -> bookService.searchBooks("bok", null, false, 2, 3));
+
+        assertEquals(2, page.size());
+        assertEquals(all.get(3).getId(), page.get(0).getId());
+        assertEquals(all.get(4).getId(), page.get(1).getId());
+    }
+
+
+    @Test
+    @DisplayName("GET /{userId}/loans - användarens lån ska hämtas med en SQL-sats")
+    public void testUserLoans_SingleStatement() {
+        List<LoanDTO> loans = assertStatementCount(1,
+                () -> loanService.getUserLoans(testUser.getId()));
+
+        assertEquals(6, loans.size());
+        assertTrue(loans.get(0).isOverdue());
+        assertNotNull(loans.get(0).getAuthorName());
+    }
+
+
+    // Kör action och kontrollera att exakt expected SQL-satser skickades till databasen
+    private <T> T assertStatementCount(long expected, Supplier<T> action) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        T result = action.get();
+
+        assertEquals(expected, statistics.getPrepareStatementCount(),
+                "Antal SQL-satser (se spring.jpa.show-sql för vilka)");
+        return result;
+    }
+}
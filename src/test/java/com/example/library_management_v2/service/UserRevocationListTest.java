@@ -0,0 +1,49 @@
+package com.example.library_management_v2.service;
+
+import com.example.library_management_v2.config.JwtUtil;
+import io.jsonwebtoken.Claims;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Spärrlistan: en token utfärdad före spärren nekas - även inom samma sekund - en ny token släpps igenom
+
+public class UserRevocationListTest {
+
+    private final JwtUtil jwtUtil = new JwtUtil();
+
+    private final UserRevocationList revocationList = new UserRevocationList();
+
+    private final UserDetails user = new User("astrid@example.com", "", List.of(new SimpleGrantedAuthority("ROLE_USER")));
+
+
+    @Test
+    @DisplayName("Token utfärdad strax före spärren nekas, token utfärdad efter släpps igenom")
+    public void testRevokedWithinSameSecond() throws Exception {
+        Claims before = jwtUtil.validateAndExtractClaims(jwtUtil.generateToken(user));
+        assertFalse(revocationList.isRevoked(user.getUsername(), jwtUtil.extractIssuedAtMillis(before)));
+
+        // Samma sekund som tokenen skapades (iat är lika) - förut släpptes den igenom
+        revocationList.revoke(user.getUsername());
+        assertTrue(revocationList.isRevoked(user.getUsername(), jwtUtil.extractIssuedAtMillis(before)));
+
+        Thread.sleep(2);
+        Claims after = jwtUtil.validateAndExtractClaims(jwtUtil.generateToken(user));
+        assertFalse(revocationList.isRevoked(user.getUsername(), jwtUtil.extractIssuedAtMillis(after)));
+    }
+
+
+    @Test
+    @DisplayName("Token utan utfärdandetid nekas för en spärrad användare")
+    public void testMissingIssuedAt() {
+        assertFalse(revocationList.isRevoked(user.getUsername(), null));
+        revocationList.revoke(user.getUsername());
+        assertTrue(revocationList.isRevoked(user.getUsername(), null));
+    }
+}